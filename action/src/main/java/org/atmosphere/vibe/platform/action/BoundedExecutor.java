@@ -0,0 +1,325 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.action;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor for blocking tasks such as reading a request body from a stream
+ * which doesn't support non-blocking I/O. Unlike creating a thread per task,
+ * the number of tasks in flight is bounded: at most
+ * {@link Options#maxThreads(int)} tasks run at once and up to
+ * {@link Options#queueSize(int)} wait for them. A task submitted beyond that
+ * is rejected with {@link RejectedExecutionException} and counted.
+ * <p>
+ * If the runtime supports virtual threads, each task runs on its own virtual
+ * thread by default. The same limits apply: a task waits in the queue until
+ * one of the running tasks completes. Otherwise, a pool of daemon platform threads is used, and idle
+ * threads die after a minute. {@link BoundedExecutor#shared()} returns an
+ * executor shared by the whole process, which is what bridges use by default.
+ *
+ * <pre>
+ * BoundedExecutor executor = new BoundedExecutor(new BoundedExecutor.Options().maxThreads(16));
+ * executor.execute(task);
+ * </pre>
+ */
+public class BoundedExecutor implements Executor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundedExecutor.class);
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    // Only for virtual threads which have neither a pool nor a queue to bound
+    private final Semaphore permits;
+    private final Queue<Runnable> waiting;
+    private final AtomicInteger inFlight;
+    private final int maxInFlight;
+    private volatile boolean shutdown;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates an executor with the default options.
+     */
+    public BoundedExecutor() {
+        this(new Options());
+    }
+
+    /**
+     * Creates an executor with the given options.
+     */
+    public BoundedExecutor(Options options) {
+        this(options, options.virtualThreads() ? newVirtualThreadPerTaskExecutor() : null);
+    }
+
+    // A thread per task executor other than virtual one is passed by tests
+    BoundedExecutor(Options options, ExecutorService virtualExecutor) {
+        if (options.maxThreads() <= 0 || options.queueSize() < 0) {
+            throw new IllegalArgumentException("Max threads must be positive and queue size must not be negative");
+        }
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.virtual = true;
+            this.permits = new Semaphore(options.maxThreads());
+            this.waiting = new ConcurrentLinkedQueue<>();
+            this.inFlight = new AtomicInteger();
+            this.maxInFlight = options.maxThreads() + options.queueSize();
+        } else {
+            final String name = options.name();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(options.maxThreads(), options.maxThreads(), 60, TimeUnit.SECONDS,
+                options.queueSize() == 0 ? new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(options.queueSize()),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+            this.virtual = false;
+            this.permits = null;
+            this.waiting = null;
+            this.inFlight = null;
+            this.maxInFlight = 0;
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is available since Java 21
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (Exception e) {
+            logger.debug("Virtual threads are not available so platform threads are used");
+            return null;
+        }
+    }
+
+    /**
+     * Returns the executor shared by the whole process.
+     */
+    public static BoundedExecutor shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Executes the given task or throws {@link RejectedExecutionException}
+     * if too many tasks are in flight.
+     */
+    @Override
+    public void execute(final Runnable task) {
+        Runnable wrapper = new Runnable() {
+            @Override
+            public void run() {
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                    if (permits != null) {
+                        permits.release();
+                        if (inFlight.decrementAndGet() == 0 && shutdown) {
+                            executor.shutdown();
+                        }
+                        drain();
+                    }
+                }
+            }
+        };
+        if (permits != null) {
+            if (shutdown) {
+                throw reject(task);
+            }
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                throw reject(task);
+            }
+            waiting.offer(wrapper);
+            drain();
+            return;
+        }
+        try {
+            executor.execute(wrapper);
+        } catch (RejectedExecutionException e) {
+            throw reject(task);
+        }
+    }
+
+    // Starts waiting tasks as long as fewer than max threads are running
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                // Another thread has started it
+                permits.release();
+                continue;
+            }
+            try {
+                executor.execute(next);
+            } catch (RejectedExecutionException e) {
+                inFlight.decrementAndGet();
+                permits.release();
+                rejected.incrementAndGet();
+                logger.warn("{} has dropped {} as it has been shut down", this, next);
+            }
+        }
+    }
+
+    private RejectedExecutionException reject(Runnable task) {
+        rejected.incrementAndGet();
+        logger.warn("{} has rejected {} as too many tasks are in flight", this, task);
+        return new RejectedExecutionException("Too many tasks are in flight");
+    }
+
+    /**
+     * Whether tasks run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * The number of tasks running now.
+     */
+    public int activeCount() {
+        return active.get();
+    }
+
+    /**
+     * The number of tasks which have completed.
+     */
+    public long completedCount() {
+        return completed.get();
+    }
+
+    /**
+     * The number of tasks which have been rejected.
+     */
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops accepting tasks. Tasks in flight are not interrupted. The shared
+     * executor can't be shut down.
+     */
+    public void shutdown() {
+        if (this == Shared.INSTANCE) {
+            throw new IllegalStateException("The shared executor can't be shut down");
+        }
+        if (permits != null) {
+            // Waiting tasks still need the executor to run
+            shutdown = true;
+            if (inFlight.get() > 0) {
+                return;
+            }
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Options for {@link BoundedExecutor}.
+     */
+    public static class Options {
+
+        private int maxThreads = 64;
+        private int queueSize = 1024;
+        private boolean virtualThreads = true;
+        private String name = "vibe-bounded-executor";
+
+        public int maxThreads() {
+            return maxThreads;
+        }
+
+        /**
+         * The max number of tasks running at once, which is also the size of
+         * the pool of platform threads. The default value is 64.
+         */
+        public Options maxThreads(int maxThreads) {
+            this.maxThreads = maxThreads;
+            return this;
+        }
+
+        public int queueSize() {
+            return queueSize;
+        }
+
+        /**
+         * The max number of tasks waiting for a thread. The default value is
+         * 1024.
+         */
+        public Options queueSize(int queueSize) {
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        public boolean virtualThreads() {
+            return virtualThreads;
+        }
+
+        /**
+         * Whether to run each task on a virtual thread if the runtime
+         * supports it. The default value is true.
+         */
+        public Options virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * The name prefix of platform threads.
+         */
+        public Options name(String name) {
+            this.name = name;
+            return this;
+        }
+
+    }
+
+    // Created only when it's needed
+    private static class Shared {
+
+        static final BoundedExecutor INSTANCE = new BoundedExecutor();
+
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.action;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * Receives events of HTTP exchanges and WebSocket connections from the
+ * abstract base classes so that every bridge reports the same numbers. Every
+ * method does nothing by default, so an implementation only overrides what it
+ * needs. Methods are called on I/O threads and should never block.
+ * <p>
+ * {@link PlatformMetrics#current()} returns the metrics in use. It's the one
+ * installed by {@link PlatformMetrics#install(PlatformMetrics)} if any, or
+ * else the first implementation registered in
+ * {@code META-INF/services/org.atmosphere.vibe.platform.action.PlatformMetrics},
+ * or else {@link PlatformMetrics#NOOP}. An exchange or a connection reports to
+ * the metrics in use when it's created. {@link SimplePlatformMetrics} is a
+ * lightweight implementation based on counters.
+ *
+ * <pre>
+ * SimplePlatformMetrics metrics = new SimplePlatformMetrics();
+ * PlatformMetrics.install(metrics);
+ * // Later
+ * metrics.activeSockets();
+ * </pre>
+ */
+public abstract class PlatformMetrics {
+
+    /**
+     * Metrics ignoring every event.
+     */
+    public static final PlatformMetrics NOOP = new PlatformMetrics() {
+        @Override
+        public boolean enabled() {
+            return false;
+        }
+    };
+
+    private static volatile PlatformMetrics installed;
+
+    /**
+     * Returns the metrics in use.
+     */
+    public static PlatformMetrics current() {
+        PlatformMetrics metrics = installed;
+        return metrics != null ? metrics : Loaded.INSTANCE;
+    }
+
+    /**
+     * Uses the given metrics for exchanges and connections created from now
+     * on. Passing null restores the default.
+     */
+    public static void install(PlatformMetrics metrics) {
+        installed = metrics;
+    }
+
+    /**
+     * Whether events are recorded. If false, callers may skip computing the
+     * arguments of events. The default value is true.
+     */
+    public boolean enabled() {
+        return true;
+    }
+
+    /**
+     * An HTTP exchange has been created.
+     */
+    public void exchangeStarted() {
+    }
+
+    /**
+     * The first piece of an HTTP response has been handed over to the
+     * platform the given nanoseconds after the exchange has been created.
+     */
+    public void exchangeFirstByte(long nanos) {
+    }
+
+    /**
+     * An HTTP exchange has been completed or closed the given nanoseconds
+     * after it has been created.
+     */
+    public void exchangeFinished(long nanos) {
+    }
+
+    /**
+     * An HTTP exchange has received an error.
+     */
+    public void exchangeError() {
+    }
+
+    /**
+     * The given number of bytes of a request body have been read. Compressed
+     * bodies are counted before being decompressed.
+     */
+    public void bytesRead(long bytes) {
+    }
+
+    /**
+     * The given number of bytes of a response body have been written.
+     * Compressed bodies are counted after being compressed.
+     */
+    public void bytesWritten(long bytes) {
+    }
+
+    /**
+     * A WebSocket connection has been opened.
+     */
+    public void socketOpened() {
+    }
+
+    /**
+     * A WebSocket connection has been closed.
+     */
+    public void socketClosed() {
+    }
+
+    /**
+     * A WebSocket connection has received an error.
+     */
+    public void socketError() {
+    }
+
+    /**
+     * A data frame of the given payload length has been received. A message
+     * the platform has assembled by itself counts as one frame.
+     */
+    public void frameReceived(long bytes) {
+    }
+
+    /**
+     * A data frame of the given payload length has been sent. A message
+     * counts as one frame unless it's sent in fragments.
+     */
+    public void frameSent(long bytes) {
+    }
+
+    // Looked up only when it's needed
+    private static class Loaded {
+
+        static final PlatformMetrics INSTANCE = load();
+
+        private static PlatformMetrics load() {
+            Iterator<PlatformMetrics> iterator = ServiceLoader.load(PlatformMetrics.class).iterator();
+            return iterator.hasNext() ? iterator.next() : NOOP;
+        }
+
+    }
+
+}
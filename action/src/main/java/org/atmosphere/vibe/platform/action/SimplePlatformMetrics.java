@@ -0,0 +1,305 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.action;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link PlatformMetrics} keeping counters and histograms in memory. Every
+ * event costs a few atomic operations and no allocation, so it can stay on in
+ * production. The numbers can be read from any thread and exported to a
+ * monitoring system periodically.
+ */
+public class SimplePlatformMetrics extends PlatformMetrics {
+
+    private final AtomicLong exchanges = new AtomicLong();
+    private final AtomicLong activeExchanges = new AtomicLong();
+    private final AtomicLong exchangeErrors = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final Histogram timeToFirstByte = new Histogram();
+    private final Histogram exchangeDuration = new Histogram();
+    private final AtomicLong sockets = new AtomicLong();
+    private final AtomicLong activeSockets = new AtomicLong();
+    private final AtomicLong socketErrors = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong frameBytesReceived = new AtomicLong();
+    private final AtomicLong frameBytesSent = new AtomicLong();
+
+    @Override
+    public void exchangeStarted() {
+        exchanges.incrementAndGet();
+        activeExchanges.incrementAndGet();
+    }
+
+    @Override
+    public void exchangeFirstByte(long nanos) {
+        timeToFirstByte.record(nanos);
+    }
+
+    @Override
+    public void exchangeFinished(long nanos) {
+        activeExchanges.decrementAndGet();
+        exchangeDuration.record(nanos);
+    }
+
+    @Override
+    public void exchangeError() {
+        exchangeErrors.incrementAndGet();
+    }
+
+    @Override
+    public void bytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    @Override
+    public void bytesWritten(long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    @Override
+    public void socketOpened() {
+        sockets.incrementAndGet();
+        activeSockets.incrementAndGet();
+    }
+
+    @Override
+    public void socketClosed() {
+        activeSockets.decrementAndGet();
+    }
+
+    @Override
+    public void socketError() {
+        socketErrors.incrementAndGet();
+    }
+
+    @Override
+    public void frameReceived(long bytes) {
+        framesReceived.incrementAndGet();
+        frameBytesReceived.addAndGet(bytes);
+    }
+
+    @Override
+    public void frameSent(long bytes) {
+        framesSent.incrementAndGet();
+        frameBytesSent.addAndGet(bytes);
+    }
+
+    /**
+     * The number of HTTP exchanges created so far.
+     */
+    public long exchanges() {
+        return exchanges.get();
+    }
+
+    /**
+     * The number of HTTP exchanges neither completed nor closed.
+     */
+    public long activeExchanges() {
+        return activeExchanges.get();
+    }
+
+    /**
+     * The number of errors HTTP exchanges have received.
+     */
+    public long exchangeErrors() {
+        return exchangeErrors.get();
+    }
+
+    /**
+     * The number of bytes of request bodies read.
+     */
+    public long bytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * The number of bytes of response bodies written.
+     */
+    public long bytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * The time from the creation of an exchange to the first piece of its
+     * response.
+     */
+    public Histogram timeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * The time from the creation of an exchange to its completion.
+     */
+    public Histogram exchangeDuration() {
+        return exchangeDuration;
+    }
+
+    /**
+     * The number of WebSocket connections opened so far.
+     */
+    public long sockets() {
+        return sockets.get();
+    }
+
+    /**
+     * The number of WebSocket connections open now.
+     */
+    public long activeSockets() {
+        return activeSockets.get();
+    }
+
+    /**
+     * The number of errors WebSocket connections have received.
+     */
+    public long socketErrors() {
+        return socketErrors.get();
+    }
+
+    /**
+     * The number of data frames received.
+     */
+    public long framesReceived() {
+        return framesReceived.get();
+    }
+
+    /**
+     * The number of data frames sent.
+     */
+    public long framesSent() {
+        return framesSent.get();
+    }
+
+    /**
+     * The number of payload bytes of data frames received.
+     */
+    public long frameBytesReceived() {
+        return frameBytesReceived.get();
+    }
+
+    /**
+     * The number of payload bytes of data frames sent.
+     */
+    public long frameBytesSent() {
+        return frameBytesSent.get();
+    }
+
+    /**
+     * Histogram of durations with fixed buckets from 1ms to 10s. Durations
+     * longer than the last bound fall into an overflow bucket.
+     */
+    public static class Histogram {
+
+        private static final long[] BOUNDS = { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+        private static final long[] BOUND_NANOS = new long[BOUNDS.length];
+
+        static {
+            for (int i = 0; i < BOUNDS.length; i++) {
+                BOUND_NANOS[i] = TimeUnit.MILLISECONDS.toNanos(BOUNDS[i]);
+            }
+        }
+
+        private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            int i = 0;
+            while (i < BOUND_NANOS.length && nanos > BOUND_NANOS[i]) {
+                i++;
+            }
+            counts.incrementAndGet(i);
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            }
+        }
+
+        /**
+         * The upper bounds of buckets in milliseconds.
+         */
+        public long[] bounds() {
+            return Arrays.copyOf(BOUNDS, BOUNDS.length);
+        }
+
+        /**
+         * The number of durations in each bucket. The last element is the
+         * overflow bucket.
+         */
+        public long[] counts() {
+            long[] snapshot = new long[counts.length()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = counts.get(i);
+            }
+            return snapshot;
+        }
+
+        /**
+         * The number of durations recorded.
+         */
+        public long count() {
+            return count.get();
+        }
+
+        /**
+         * The sum of durations recorded in nanoseconds.
+         */
+        public long sum() {
+            return sum.get();
+        }
+
+        /**
+         * The longest duration recorded in nanoseconds.
+         */
+        public long max() {
+            return max.get();
+        }
+
+        /**
+         * Estimates the given percentile, between 0 and 100, in milliseconds
+         * as the upper bound of the bucket it falls into. If it falls into
+         * the overflow bucket, the longest duration is returned.
+         */
+        public long percentile(double percentile) {
+            long[] snapshot = counts();
+            long total = 0;
+            for (long n : snapshot) {
+                total += n;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max((long) Math.ceil(total * percentile / 100), 1);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return BOUNDS[i];
+                }
+            }
+            return TimeUnit.NANOSECONDS.toMillis(max.get());
+        }
+
+    }
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.action;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel executing actions after a delay. Timeouts are hashed
+ * into buckets by their deadline so that scheduling and cancellation cost
+ * O(1) and a tick only visits one bucket no matter how many timeouts are
+ * pending. It trades precision for scalability: an action is executed within
+ * one tick after its deadline.
+ * <p>
+ * Actions are executed by the single thread of the wheel, so they should be
+ * short and never block. The thread is a daemon and starts when the first
+ * timeout is scheduled. {@link TimerWheel#shared()} returns a wheel shared by
+ * the whole process, which is what bridges and utilities use by default.
+ *
+ * <pre>
+ * Timeout timeout = TimerWheel.shared().schedule(30000, new VoidAction() {...});
+ * timeout.cancel();
+ * </pre>
+ */
+public class TimerWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger state = new AtomicInteger();
+    private final AtomicLong size = new AtomicLong();
+    private final Thread worker;
+    private volatile long startTime;
+    private long tick;
+
+    /**
+     * Creates a wheel ticking every 100 milliseconds with 512 buckets.
+     */
+    public TimerWheel() {
+        this(100, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * Creates a wheel with the given tick duration and the given number of
+     * buckets which is rounded up to a power of two.
+     */
+    public TimerWheel(long tickDuration, TimeUnit unit, int buckets) {
+        if (tickDuration <= 0 || buckets <= 0) {
+            throw new IllegalArgumentException("Tick duration and buckets must be positive");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int n = 1;
+        while (n < buckets) {
+            n <<= 1;
+        }
+        this.wheel = new Bucket[n];
+        for (int i = 0; i < n; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = n - 1;
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "vibe-timer-wheel");
+        worker.setDaemon(true);
+    }
+
+    /**
+     * Returns the wheel shared by the whole process.
+     */
+    public static TimerWheel shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Schedules the given action to be executed after the given milliseconds.
+     */
+    public Timeout schedule(long delay, Action<Void> action) {
+        return schedule(delay, TimeUnit.MILLISECONDS, action);
+    }
+
+    /**
+     * Schedules the given action to be executed after the given delay.
+     */
+    public Timeout schedule(long delay, TimeUnit unit, Action<Void> action) {
+        if (state.get() == 0 && state.compareAndSet(0, 1)) {
+            startTime = System.nanoTime();
+            worker.start();
+        } else if (state.get() == 2) {
+            throw new IllegalStateException("Timer wheel is stopped");
+        }
+        Timeout timeout = new Timeout(this, System.nanoTime() + unit.toNanos(delay), action);
+        size.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * The number of timeouts whose action is neither completed nor cancelled.
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Stops the wheel. Pending timeouts are discarded without being executed.
+     * The shared wheel can't be stopped.
+     */
+    public void stop() {
+        if (this == Shared.INSTANCE) {
+            throw new IllegalStateException("The shared timer wheel can't be stopped");
+        }
+        if (state.getAndSet(2) == 1) {
+            worker.interrupt();
+        }
+    }
+
+    private void work() {
+        while (state.get() == 1) {
+            long deadline = startTime + (tick + 1) * tickNanos;
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+            }
+            removeCancelled();
+            transferPending();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPending() {
+        // Limits the work of a tick so that a burst doesn't delay expiration
+        for (int i = 0; i < 100000; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) {
+                break;
+            }
+            if (timeout.state.get() != Timeout.INIT) {
+                continue;
+            }
+            // The tick whose end is the first one not earlier than the deadline
+            long ticks = Math.max((timeout.deadline - startTime + tickNanos - 1) / tickNanos - 1, tick);
+            timeout.rounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds <= 0) {
+                bucket.remove(timeout);
+                if (timeout.state.compareAndSet(Timeout.INIT, Timeout.EXPIRED)) {
+                    try {
+                        timeout.action.on(null);
+                    } catch (Throwable e) {
+                        logger.warn("Timeout action {} threw an exception", timeout.action, e);
+                    } finally {
+                        size.decrementAndGet();
+                    }
+                }
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * A handle of an action scheduled by {@link TimerWheel}.
+     */
+    public static class Timeout {
+
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimerWheel wheel;
+        private final long deadline;
+        private final Action<Void> action;
+        private final AtomicInteger state = new AtomicInteger();
+        // Accessed only by the worker thread
+        private long rounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        Timeout(TimerWheel wheel, long deadline, Action<Void> action) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.action = action;
+        }
+
+        /**
+         * Cancels the action. Returns true if it's cancelled before being
+         * executed.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) {
+                return false;
+            }
+            wheel.size.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+    }
+
+    // Doubly linked list of timeouts to remove one in O(1)
+    private static class Bucket {
+
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+    }
+
+    // Created only when it's needed
+    private static class Shared {
+
+        static final TimerWheel INSTANCE = new TimerWheel();
+
+    }
+
+}
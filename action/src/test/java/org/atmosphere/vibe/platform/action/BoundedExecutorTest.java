@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.action;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class BoundedExecutorTest {
+
+    @Test
+    public void execute() throws InterruptedException {
+        for (boolean virtual : new boolean[] { true, false }) {
+            BoundedExecutor executor = new BoundedExecutor(new BoundedExecutor.Options().virtualThreads(virtual));
+            final CountDownLatch latch = new CountDownLatch(100);
+            for (int i = 0; i < 100; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        latch.countDown();
+                    }
+                });
+            }
+            assertThat(latch.await(1, TimeUnit.SECONDS), is(true));
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void reject() throws InterruptedException {
+        for (boolean virtual : new boolean[] { true, false }) {
+            BoundedExecutor executor = new BoundedExecutor(new BoundedExecutor.Options().maxThreads(2).queueSize(1).virtualThreads(virtual));
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(3);
+            Runnable blocking = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }
+            };
+            for (int i = 0; i < 3; i++) {
+                executor.execute(blocking);
+            }
+            try {
+                executor.execute(blocking);
+                fail();
+            } catch (RejectedExecutionException e) {
+                assertThat(executor.rejectedCount(), is(1L));
+            }
+            release.countDown();
+            assertThat(done.await(1, TimeUnit.SECONDS), is(true));
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void queue() throws InterruptedException {
+        // Runs the same logic as virtual threads on any runtime
+        BoundedExecutor executor = new BoundedExecutor(new BoundedExecutor.Options().maxThreads(2).queueSize(2),
+            Executors.newCachedThreadPool());
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(4);
+        Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < 4; i++) {
+            executor.execute(blocking);
+        }
+        try {
+            executor.execute(blocking);
+            fail();
+        } catch (RejectedExecutionException e) {
+            assertThat(executor.rejectedCount(), is(1L));
+        }
+        // Only max threads tasks run and the others wait for them
+        Thread.sleep(100);
+        assertThat(executor.activeCount(), is(2));
+        // Waiting tasks still run after shutdown
+        executor.shutdown();
+        release.countDown();
+        assertThat(done.await(1, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void metrics() throws InterruptedException {
+        BoundedExecutor executor = new BoundedExecutor(new BoundedExecutor.Options().virtualThreads(false));
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertThat(started.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(executor.activeCount(), is(1));
+        assertThat(executor.isVirtual(), is(false));
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 1000;
+        while (executor.completedCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(executor.completedCount(), is(1L));
+        assertThat(executor.activeCount(), is(0));
+        executor.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shutdown_shared() {
+        BoundedExecutor.shared().shutdown();
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.action;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.atmosphere.vibe.platform.action.SimplePlatformMetrics.Histogram;
+import org.junit.Test;
+
+public class SimplePlatformMetricsTest {
+
+    @Test
+    public void install() {
+        assertThat(PlatformMetrics.current(), sameInstance(PlatformMetrics.NOOP));
+        assertThat(PlatformMetrics.NOOP.enabled(), is(false));
+        SimplePlatformMetrics metrics = new SimplePlatformMetrics();
+        PlatformMetrics.install(metrics);
+        try {
+            assertThat(PlatformMetrics.current(), sameInstance((PlatformMetrics) metrics));
+        } finally {
+            PlatformMetrics.install(null);
+        }
+        assertThat(PlatformMetrics.current(), sameInstance(PlatformMetrics.NOOP));
+    }
+
+    @Test
+    public void exchanges() {
+        SimplePlatformMetrics metrics = new SimplePlatformMetrics();
+        metrics.exchangeStarted();
+        metrics.exchangeStarted();
+        metrics.exchangeFirstByte(TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.bytesRead(10);
+        metrics.bytesWritten(20);
+        metrics.bytesWritten(5);
+        metrics.exchangeError();
+        metrics.exchangeFinished(TimeUnit.MILLISECONDS.toNanos(4));
+        assertThat(metrics.exchanges(), is(2L));
+        assertThat(metrics.activeExchanges(), is(1L));
+        assertThat(metrics.exchangeErrors(), is(1L));
+        assertThat(metrics.bytesRead(), is(10L));
+        assertThat(metrics.bytesWritten(), is(25L));
+        assertThat(metrics.timeToFirstByte().count(), is(1L));
+        assertThat(metrics.exchangeDuration().count(), is(1L));
+    }
+
+    @Test
+    public void sockets() {
+        SimplePlatformMetrics metrics = new SimplePlatformMetrics();
+        metrics.socketOpened();
+        metrics.socketOpened();
+        metrics.frameReceived(3);
+        metrics.frameSent(4);
+        metrics.frameSent(6);
+        metrics.socketError();
+        metrics.socketClosed();
+        assertThat(metrics.sockets(), is(2L));
+        assertThat(metrics.activeSockets(), is(1L));
+        assertThat(metrics.socketErrors(), is(1L));
+        assertThat(metrics.framesReceived(), is(1L));
+        assertThat(metrics.frameBytesReceived(), is(3L));
+        assertThat(metrics.framesSent(), is(2L));
+        assertThat(metrics.frameBytesSent(), is(10L));
+    }
+
+    @Test
+    public void histogram() {
+        Histogram histogram = new Histogram();
+        assertThat(histogram.percentile(50), is(0L));
+        for (int i = 0; i < 90; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(500));
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(40));
+        }
+        histogram.record(TimeUnit.SECONDS.toNanos(30));
+        long[] counts = histogram.counts();
+        assertThat(counts.length, is(histogram.bounds().length + 1));
+        assertThat(counts[0], is(90L));
+        assertThat(counts[5], is(9L));
+        assertThat(counts[counts.length - 1], is(1L));
+        assertThat(histogram.count(), is(100L));
+        assertThat(histogram.max(), is(TimeUnit.SECONDS.toNanos(30)));
+        assertThat(histogram.percentile(0), is(1L));
+        assertThat(histogram.percentile(50), is(1L));
+        assertThat(histogram.percentile(90), is(1L));
+        assertThat(histogram.percentile(95), is(50L));
+        assertThat(histogram.percentile(100), is(30000L));
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.action;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+    private TimerWheel wheel = new TimerWheel(10, TimeUnit.MILLISECONDS, 8);
+
+    @After
+    public void after() {
+        wheel.stop();
+    }
+
+    @Test
+    public void schedule() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        final AtomicInteger elapsed = new AtomicInteger();
+        TimerWheel.Timeout timeout = wheel.schedule(50, new VoidAction() {
+            @Override
+            public void on() {
+                elapsed.set((int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                latch.countDown();
+            }
+        });
+        assertThat(latch.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(elapsed.get(), greaterThanOrEqualTo(50));
+        assertThat(timeout.isExpired(), is(true));
+        assertThat(timeout.cancel(), is(false));
+    }
+
+    @Test
+    public void schedule_more_than_a_round() throws InterruptedException {
+        // 8 buckets of 10ms is a round of 80ms
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long start = System.nanoTime();
+        final AtomicInteger elapsed = new AtomicInteger();
+        wheel.schedule(200, new VoidAction() {
+            @Override
+            public void on() {
+                elapsed.set((int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                latch.countDown();
+            }
+        });
+        assertThat(latch.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(elapsed.get(), greaterThanOrEqualTo(200));
+    }
+
+    @Test
+    public void cancel() throws InterruptedException {
+        final AtomicInteger count = new AtomicInteger();
+        TimerWheel.Timeout timeout = wheel.schedule(30, new VoidAction() {
+            @Override
+            public void on() {
+                count.incrementAndGet();
+            }
+        });
+        assertThat(wheel.size(), is(1L));
+        assertThat(timeout.cancel(), is(true));
+        assertThat(timeout.isCancelled(), is(true));
+        assertThat(wheel.size(), is(0L));
+        Thread.sleep(100);
+        assertThat(count.get(), is(0));
+    }
+
+    @Test
+    public void many() throws InterruptedException {
+        int n = 100000;
+        final AtomicInteger count = new AtomicInteger();
+        TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[n];
+        for (int i = 0; i < n; i++) {
+            timeouts[i] = wheel.schedule(100 + i % 100, new VoidAction() {
+                @Override
+                public void on() {
+                    count.incrementAndGet();
+                }
+            });
+        }
+        int cancelled = 0;
+        for (int i = 0; i < n; i += 2) {
+            if (timeouts[i].cancel()) {
+                cancelled++;
+            }
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (wheel.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(wheel.size(), is(0L));
+        assertThat(count.get(), is(n - cancelled));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stop() {
+        wheel.stop();
+        wheel.schedule(10, new VoidAction() {
+            @Override
+            public void on() {
+            }
+        });
+    }
+
+}
@@ -18,11 +18,9 @@ package org.atmosphere.vibe.platform.bridge.atmosphere2;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.Collections;
 import java.util.Enumeration;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
@@ -35,9 +33,12 @@ import org.atmosphere.cpr.AtmosphereResourceImpl;
 import org.atmosphere.cpr.AtmosphereResponse;
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.action.Actions;
+import org.atmosphere.vibe.platform.action.BoundedExecutor;
 import org.atmosphere.vibe.platform.http.AbstractServerHttpExchange;
+import org.atmosphere.vibe.platform.http.HttpHeaders;
 import org.atmosphere.vibe.platform.http.HttpStatus;
 import org.atmosphere.vibe.platform.http.ServerHttpExchange;
+import org.atmosphere.vibe.platform.http.SimpleHttpHeaders;
 
 /**
  * {@link ServerHttpExchange} for Atmosphere 2.
@@ -49,8 +50,19 @@ public class AtmosphereServerHttpExchange extends AbstractServerHttpExchange {
     private final AtmosphereResource resource;
     private final AtmosphereResponse response;
     private final AtmosphereRequest request;
+    private final Executor bodyReaderExecutor;
+    private String uri;
 
     public AtmosphereServerHttpExchange(AtmosphereResource resource) {
+        this(resource, BoundedExecutor.shared());
+    }
+
+    /**
+     * Creates an exchange reading the request body with the given executor
+     * if the container doesn't support non-blocking I/O of Servlet 3.1.
+     */
+    public AtmosphereServerHttpExchange(AtmosphereResource resource, Executor bodyReaderExecutor) {
+        this.bodyReaderExecutor = bodyReaderExecutor;
         this.resource = resource.suspend();
         // Prevent IllegalStateException when the connection gets closed.
         this.response = AtmosphereResourceImpl.class.cast(resource).getResponse(false);
@@ -75,9 +87,11 @@ public class AtmosphereServerHttpExchange extends AbstractServerHttpExchange {
 
     @Override
     public String uri() {
-        String uri = request.getRequestURI();
-        if (request.getQueryString() != null) {
-            uri += "?" + request.getQueryString();
+        if (uri == null) {
+            uri = request.getRequestURI();
+            if (request.getQueryString() != null) {
+                uri += "?" + request.getQueryString();
+            }
         }
         return uri;
     }
@@ -87,20 +101,19 @@ public class AtmosphereServerHttpExchange extends AbstractServerHttpExchange {
         return request.getMethod();
     }
 
-    @Override
-    public Set<String> headerNames() {
-        Set<String> headerNames = new LinkedHashSet<>();
-        Enumeration<String> enumeration = request.getHeaderNames();
-        while (enumeration.hasMoreElements()) {
-            headerNames.add(enumeration.nextElement());
-        }
-        return headerNames;
-    }
-
     @SuppressWarnings("unchecked")
     @Override
-    public List<String> headers(String name) {
-        return Collections.list(request.getHeaders(name));
+    protected HttpHeaders createHeaders() {
+        SimpleHttpHeaders headers = new SimpleHttpHeaders();
+        Enumeration<String> names = request.getHeaderNames();
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            Enumeration<String> values = request.getHeaders(name);
+            while (values.hasMoreElements()) {
+                headers.add(name, values.nextElement());
+            }
+        }
+        return headers;
     }
     
     @Override
@@ -113,7 +126,7 @@ public class AtmosphereServerHttpExchange extends AbstractServerHttpExchange {
                 new AsyncBodyReader(input, chunkAction, endActions, errorActions);
             } else {
                 // 3.0 synchronous
-                new SyncBodyReader(input, chunkAction, endActions, errorActions);
+                new SyncBodyReader(input, chunkAction, endActions, errorActions, bodyReaderExecutor);
             }
         } catch (IOException e) {
             errorActions.fire(e);
@@ -196,24 +209,31 @@ public class AtmosphereServerHttpExchange extends AbstractServerHttpExchange {
     }
 
     private static class SyncBodyReader extends BodyReader {
-        public SyncBodyReader(ServletInputStream input, Action<ByteBuffer> action, Actions<Void> endActions, Actions<Throwable> errorActions) {
+        public SyncBodyReader(ServletInputStream input, Action<ByteBuffer> action, Actions<Void> endActions, Actions<Throwable> errorActions, Executor executor) {
             super(input, action, endActions, errorActions);
+            // Here rather than start() which runs before this constructor body
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        readAll();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                errorActions.fire(e);
+            }
         }
 
         @Override
-        void start() {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        read();
-                        end();
-                    } catch (IOException e) {
-                        errorActions.fire(e);
-                    }
-                }
-            })
-            .start();
+        void start() {}
+
+        void readAll() {
+            try {
+                read();
+                end();
+            } catch (IOException e) {
+                errorActions.fire(e);
+            }
         }
 
         @Override
@@ -62,9 +62,9 @@ public class AtmosphereServerWebSocket extends AbstractServerWebSocket {
             public void onMessage(WebSocketEvent event) {
                 Object message = event.message();
                 if (message instanceof String) {
-                    textActions.fire((String) message);
+                    handleText((String) message);
                 } else if (message instanceof byte[]) {
-                    binaryActions.fire(ByteBuffer.wrap((byte[]) message));
+                    handleBinaryFragment(ByteBuffer.wrap((byte[]) message), true);
                 } else {
                     // Just to be sure
                     errorActions.fire(new IllegalStateException("Message is neither String nor byte[]"));
@@ -94,20 +94,32 @@ public class AtmosphereServerWebSocket extends AbstractServerWebSocket {
         }
     }
 
+    // Atmosphere's WebSocket writes a frame per write and its flush does
+    // nothing, so a heap buffer is written in place without a flush
     @Override
     protected void doSend(ByteBuffer byteBuffer) {
         resource.forceBinaryWrite(true);
         try {
-            byte[] bytes = new byte[byteBuffer.remaining()];
-            byteBuffer.get(bytes);
             OutputStream outputStream = resource.getResponse().getOutputStream();
-            outputStream.write(bytes);
-            outputStream.flush();
+            if (byteBuffer.hasArray()) {
+                outputStream.write(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), byteBuffer.remaining());
+                byteBuffer.position(byteBuffer.limit());
+            } else {
+                byte[] bytes = new byte[byteBuffer.remaining()];
+                byteBuffer.get(bytes);
+                outputStream.write(bytes);
+            }
         } catch (IOException e) {
             errorActions.fire(e);
         }
     }
 
+    @Override
+    protected void doPing(ByteBuffer data) {
+        // Atmosphere's WebSocket abstraction doesn't expose control frames
+        throw new UnsupportedOperationException("Atmosphere 2 doesn't support sending a ping");
+    }
+
     @Override
     protected void doClose() {
         try {
@@ -16,6 +16,7 @@
 package org.atmosphere.vibe.platform.bridge.atmosphere2;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -26,6 +27,7 @@ import org.atmosphere.cpr.AtmosphereServlet;
 import org.atmosphere.handler.AtmosphereHandlerAdapter;
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.action.Actions;
+import org.atmosphere.vibe.platform.action.BoundedExecutor;
 import org.atmosphere.vibe.platform.action.ConcurrentActions;
 import org.atmosphere.vibe.platform.http.ServerHttpExchange;
 import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
@@ -54,6 +56,7 @@ public class VibeAtmosphereServlet extends AtmosphereServlet {
     
     private Actions<ServerHttpExchange> httpActions = new ConcurrentActions<>();
     private Actions<ServerWebSocket> wsActions = new ConcurrentActions<>();
+    private Executor bodyReaderExecutor = BoundedExecutor.shared();
 
     @Override
     public void init(ServletConfig sc) throws ServletException {
@@ -66,7 +69,7 @@ public class VibeAtmosphereServlet extends AtmosphereServlet {
                         wsActions.fire(new AtmosphereServerWebSocket(resource));
                     }
                 } else {
-                    httpActions.fire(new AtmosphereServerHttpExchange(resource));
+                    httpActions.fire(new AtmosphereServerHttpExchange(resource, bodyReaderExecutor));
                 }
             }
         });
@@ -100,4 +103,14 @@ public class VibeAtmosphereServlet extends AtmosphereServlet {
         return this;
     }
 
+    /**
+     * Sets the executor to read request bodies on Servlet 3.0 containers
+     * which don't support non-blocking I/O. By default, the shared
+     * {@link BoundedExecutor} is used.
+     */
+    public VibeAtmosphereServlet bodyReaderExecutor(Executor executor) {
+        this.bodyReaderExecutor = executor;
+        return this;
+    }
+
 }
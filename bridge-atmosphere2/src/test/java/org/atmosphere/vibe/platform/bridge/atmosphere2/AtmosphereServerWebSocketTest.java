@@ -32,6 +32,7 @@ import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.Ignore;
 import org.junit.Test;
 
 public class AtmosphereServerWebSocketTest extends ServerWebSocketTest {
@@ -80,4 +81,26 @@ public class AtmosphereServerWebSocketTest extends ServerWebSocketTest {
         server.stop();
     }
 
+    // Atmosphere 2 can't send a ping
+    @Override
+    @Test
+    @Ignore
+    public void ping_pong() {}
+
+    @Override
+    @Test
+    @Ignore
+    public void setIdleTimeout() {}
+
+    // Atmosphere 2 can't close the connection with a status code
+    @Override
+    @Test
+    @Ignore
+    public void setMaxMessageSize_text() {}
+
+    @Override
+    @Test
+    @Ignore
+    public void setMaxMessageSize_binary() {}
+
 }
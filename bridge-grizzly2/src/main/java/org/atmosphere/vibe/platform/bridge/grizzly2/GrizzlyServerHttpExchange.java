@@ -18,15 +18,13 @@ package org.atmosphere.vibe.platform.bridge.grizzly2;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.http.AbstractServerHttpExchange;
+import org.atmosphere.vibe.platform.http.HttpHeaders;
 import org.atmosphere.vibe.platform.http.HttpStatus;
 import org.atmosphere.vibe.platform.http.ServerHttpExchange;
+import org.atmosphere.vibe.platform.http.SimpleHttpHeaders;
 import org.glassfish.grizzly.CloseListener;
 import org.glassfish.grizzly.Closeable;
 import org.glassfish.grizzly.ReadHandler;
@@ -43,6 +41,7 @@ public class GrizzlyServerHttpExchange extends AbstractServerHttpExchange {
 
     private final Request request;
     private final Response response;
+    private String uri;
 
     @SuppressWarnings("deprecation")
     public GrizzlyServerHttpExchange(Request request, Response response) {
@@ -62,9 +61,11 @@ public class GrizzlyServerHttpExchange extends AbstractServerHttpExchange {
 
     @Override
     public String uri() {
-        String uri = request.getRequestURI();
-        if (request.getQueryString() != null) {
-            uri += "?" + request.getQueryString();
+        if (uri == null) {
+            uri = request.getRequestURI();
+            if (request.getQueryString() != null) {
+                uri += "?" + request.getQueryString();
+            }
         }
         return uri;
     }
@@ -75,19 +76,12 @@ public class GrizzlyServerHttpExchange extends AbstractServerHttpExchange {
     }
 
     @Override
-    public Set<String> headerNames() {
-        Set<String> headerNames = new LinkedHashSet<>();
-        for (String headerName : request.getHeaderNames()) {
-            headerNames.add(headerName);
-        }
-        return headerNames;
-    }
-
-    @Override
-    public List<String> headers(String name) {
-        List<String> headers = new ArrayList<String>();
-        for (String header : request.getHeaders(name)) {
-            headers.add(header);
+    protected HttpHeaders createHeaders() {
+        SimpleHttpHeaders headers = new SimpleHttpHeaders();
+        for (String name : request.getHeaderNames()) {
+            for (String value : request.getHeaders(name)) {
+                headers.add(name, value);
+            }
         }
         return headers;
     }
@@ -35,20 +35,50 @@ public class GrizzlyServerWebSocket extends AbstractServerWebSocket {
     
     // To access the upgrade request for this WebSocket 
     private final DefaultWebSocket socket;
+    // Grizzly decodes each text fragment by itself
+    private StringBuilder textMessage;
     
     public GrizzlyServerWebSocket(DefaultWebSocket webSocket) {
         this.socket = webSocket;
         socket.add(new WebSocketAdapter() {
             @Override
             public void onMessage(WebSocket socket, String message) {
-                textActions.fire(message);
+                handleText(message);
             }
             
             @Override
             public void onMessage(WebSocket socket, byte[] bytes) {
-                binaryActions.fire(ByteBuffer.wrap(bytes));
+                handleBinaryFragment(ByteBuffer.wrap(bytes), true);
+            }
+
+            @Override
+            public void onFragment(WebSocket socket, String fragment, boolean last) {
+                if (textMessage == null) {
+                    textMessage = new StringBuilder();
+                }
+                textMessage.append(fragment);
+                // The number of characters is the lower bound of bytes
+                if (exceedsMaxMessageSize(textMessage.length())) {
+                    textMessage = null;
+                    return;
+                }
+                if (last) {
+                    String message = textMessage.toString();
+                    textMessage = null;
+                    handleText(message);
+                }
+            }
+
+            @Override
+            public void onFragment(WebSocket socket, byte[] fragment, boolean last) {
+                handleBinaryFragment(ByteBuffer.wrap(fragment), last);
             }
             
+            @Override
+            public void onPong(WebSocket socket, byte[] bytes) {
+                pongActions.fire(ByteBuffer.wrap(bytes));
+            }
+
             @Override
             public void onClose(WebSocket socket, DataFrame frame) {
                 closeActions.fire();
@@ -77,9 +107,32 @@ public class GrizzlyServerWebSocket extends AbstractServerWebSocket {
 
     @Override
     protected void doSend(ByteBuffer data) {
-        byte[] bytes = new byte[data.remaining()];
-        data.get(bytes);
-        socket.send(bytes);
+        socket.send(toBytes(data));
+    }
+
+    @Override
+    protected void doSend(ByteBuffer fragment, boolean last) {
+        byte[] bytes = toBytes(fragment);
+        socket.stream(last, bytes, 0, bytes.length);
+    }
+
+    @Override
+    protected void doPing(ByteBuffer data) {
+        socket.sendPing(toBytes(data));
+    }
+
+    // Grizzly takes a whole array and ignores the offset and length passed to
+    // stream, so only a buffer wrapping a whole array is passed without a
+    // copy. The array is framed into a new one before send returns.
+    private static byte[] toBytes(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+            && buffer.limit() == buffer.array().length) {
+            buffer.position(buffer.limit());
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
     }
 
     @Override
@@ -87,6 +140,11 @@ public class GrizzlyServerWebSocket extends AbstractServerWebSocket {
         socket.close();
     }
 
+    @Override
+    protected void doClose(int code, String reason) {
+        socket.close(code, reason);
+    }
+
     @Override
     public <T> T unwrap(Class<T> clazz) {
         return WebSocket.class.isAssignableFrom(clazz) ? clazz.cast(socket) : null;
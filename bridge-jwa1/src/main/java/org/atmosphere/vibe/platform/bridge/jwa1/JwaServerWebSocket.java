@@ -18,44 +18,74 @@ package org.atmosphere.vibe.platform.bridge.jwa1;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.websocket.CloseReason;
 import javax.websocket.MessageHandler;
+import javax.websocket.PongMessage;
 import javax.websocket.SendHandler;
 import javax.websocket.SendResult;
 import javax.websocket.Session;
 
 import org.atmosphere.vibe.platform.websocket.AbstractServerWebSocket;
+import org.atmosphere.vibe.platform.websocket.Fragment;
 import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
 
 /**
  * {@link ServerWebSocket} for Java WebSocket API 1.
+ * <p>
+ * A remote endpoint doesn't allow a message to be sent while another one is
+ * being sent, so only one message is handed over to the container at a time
+ * and the others wait in a queue in order. If more than the given number of
+ * messages are waiting, the peer is regarded as too slow and the connection
+ * is closed with an error instead of buffering without bound. A waiting
+ * message keeps the given buffer as is, which is why it shouldn't be modified
+ * after sending as specified by {@link ServerWebSocket#send(ByteBuffer)}.
  *
  * @author Donghwan Kim
  */
 public class JwaServerWebSocket extends AbstractServerWebSocket {
 
     private final Session session;
-    private final SendHandler sendHandler = new SendHandler() {
-        @Override
-        public void onResult(SendResult result) {
-            if (!result.isOK()) {
-                errorActions.fire(result.getException());
-            }
-        }
-    };
+    private final int defaultMaxTextMessageBufferSize;
+    private final int defaultMaxBinaryMessageBufferSize;
+    private final int maxPendingSends;
+    // Messages waiting for the one being sent, guarded by itself
+    private final Queue<Object> pendingSends = new ArrayDeque<>();
+    private boolean sending;
 
     public JwaServerWebSocket(Session session) {
+        this(session, 1024);
+    }
+
+    /**
+     * Creates a socket which allows up to the given number of messages to
+     * wait for the one being sent.
+     */
+    public JwaServerWebSocket(Session session, int maxPendingSends) {
         this.session = session;
+        this.maxPendingSends = maxPendingSends;
+        this.defaultMaxTextMessageBufferSize = session.getMaxTextMessageBufferSize();
+        this.defaultMaxBinaryMessageBufferSize = session.getMaxBinaryMessageBufferSize();
         session.addMessageHandler(new MessageHandler.Whole<String>() {
             @Override
             public void onMessage(String message) {
-                textActions.fire(message);
+                handleText(message);
             }
         });
-        session.addMessageHandler(new MessageHandler.Whole<ByteBuffer>() {
+        // Partial handler to stream large messages instead of buffering them
+        session.addMessageHandler(new MessageHandler.Partial<ByteBuffer>() {
             @Override
-            public void onMessage(ByteBuffer message) {
-                binaryActions.fire(message);
+            public void onMessage(ByteBuffer partialMessage, boolean last) {
+                handleBinaryFragment(partialMessage, last);
+            }
+        });
+        session.addMessageHandler(new MessageHandler.Whole<PongMessage>() {
+            @Override
+            public void onMessage(PongMessage message) {
+                pongActions.fire(message.getApplicationData());
             }
         });
     }
@@ -85,14 +115,136 @@ public class JwaServerWebSocket extends AbstractServerWebSocket {
         }
     }
 
+    @Override
+    protected void doClose(int code, String reason) {
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.getCloseCode(code), reason));
+        } catch (IOException e) {
+            errorActions.fire(e);
+        }
+    }
+
+    /**
+     * The limit is also set to the session's buffer sizes so that the
+     * container rejects an oversize message before buffering it.
+     */
+    @Override
+    public ServerWebSocket setMaxMessageSize(long maxMessageSize) {
+        super.setMaxMessageSize(maxMessageSize);
+        if (maxMessageSize > 0) {
+            int size = (int) Math.min(maxMessageSize, Integer.MAX_VALUE);
+            session.setMaxTextMessageBufferSize(size);
+            session.setMaxBinaryMessageBufferSize(size);
+        } else {
+            session.setMaxTextMessageBufferSize(defaultMaxTextMessageBufferSize);
+            session.setMaxBinaryMessageBufferSize(defaultMaxBinaryMessageBufferSize);
+        }
+        return this;
+    }
+
+    @Override
+    protected void doPing(ByteBuffer data) {
+        try {
+            session.getAsyncRemote().sendPing(data);
+        } catch (IOException e) {
+            errorActions.fire(e);
+        }
+    }
+
     @Override
     protected void doSend(ByteBuffer byteBuffer) {
-        session.getAsyncRemote().sendBinary(byteBuffer, sendHandler);
+        enqueue(byteBuffer);
+    }
+
+    @Override
+    protected void doSend(ByteBuffer fragment, boolean last) {
+        boolean idle;
+        synchronized (pendingSends) {
+            idle = !sending;
+            sending = true;
+        }
+        if (idle) {
+            sendFragment(fragment, last);
+            drain();
+        } else {
+            // Like a whole message, the buffer is kept without a copy
+            enqueue(new Fragment(fragment, last));
+        }
     }
 
     @Override
     protected void doSend(String data) {
-        session.getAsyncRemote().sendText(data, sendHandler);
+        enqueue(data);
+    }
+
+    private void enqueue(Object message) {
+        synchronized (pendingSends) {
+            if (sending) {
+                if (pendingSends.size() < maxPendingSends) {
+                    pendingSends.add(message);
+                    return;
+                }
+                message = null;
+            } else {
+                sending = true;
+            }
+        }
+        if (message == null) {
+            String reason = "Too many messages are waiting to be sent";
+            errorActions.fire(new IllegalStateException(reason));
+            close(1008, reason);
+        } else if (send(message)) {
+            drain();
+        }
+    }
+
+    // Sends waiting messages in order until one of them completes later
+    private void drain() {
+        for (;;) {
+            Object message;
+            synchronized (pendingSends) {
+                message = pendingSends.poll();
+                if (message == null) {
+                    sending = false;
+                    return;
+                }
+            }
+            if (!send(message)) {
+                return;
+            }
+        }
+    }
+
+    // Returns true if the message has been sent and false if the handler will
+    // resume draining once it's sent
+    private boolean send(Object message) {
+        if (message instanceof Fragment) {
+            Fragment fragment = (Fragment) message;
+            sendFragment(fragment.data(), fragment.last());
+            return true;
+        }
+        Completion completion = new Completion();
+        try {
+            if (message instanceof String) {
+                session.getAsyncRemote().sendText((String) message, completion);
+            } else {
+                session.getAsyncRemote().sendBinary((ByteBuffer) message, completion);
+            }
+        } catch (RuntimeException e) {
+            errorActions.fire(e);
+            return true;
+        }
+        return completion.completedDuringSend();
+    }
+
+    // The async remote can't send a partial message so the basic remote
+    // blocks the thread until the fragment is written
+    private void sendFragment(ByteBuffer fragment, boolean last) {
+        try {
+            session.getBasicRemote().sendBinary(fragment, last);
+        } catch (IOException e) {
+            errorActions.fire(e);
+        }
     }
 
     /**
@@ -103,4 +255,31 @@ public class JwaServerWebSocket extends AbstractServerWebSocket {
         return Session.class.isAssignableFrom(clazz) ? clazz.cast(session) : null;
     }
 
+    // The container may complete a send on the calling thread, in which case
+    // the caller continues draining instead of the handler so as not to
+    // recurse for every waiting message
+    private class Completion implements SendHandler {
+
+        private static final int SENDING = 0;
+        private static final int RETURNED = 1;
+        private static final int COMPLETED = 2;
+
+        private final AtomicInteger state = new AtomicInteger();
+
+        @Override
+        public void onResult(SendResult result) {
+            if (!result.isOK()) {
+                errorActions.fire(result.getException());
+            }
+            if (!state.compareAndSet(SENDING, COMPLETED)) {
+                drain();
+            }
+        }
+
+        boolean completedDuringSend() {
+            return !state.compareAndSet(SENDING, RETURNED);
+        }
+
+    }
+
 }
@@ -31,6 +31,10 @@ import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
 /**
  * Endpoint to process {@link Endpoint} and {@link Session} into {@link ServerWebSocket}.
  * <p>
+ * Each {@link ServerWebSocket} is kept in the user properties of its session,
+ * so one endpoint instance can serve any number of sessions. To share one
+ * instance instead of creating one per connection, use
+ * {@link VibeServerEndpointConfigurator#endpoint(VibeServerEndpoint)}.
  * 
  * <pre>
  * ServerEndpointConfig config = ServerEndpointConfig.Builder.create(VibeServerEndpoint.class, "/vibe")
@@ -47,26 +51,45 @@ import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
  */
 public class VibeServerEndpoint extends Endpoint {
 
+    private static final String KEY = JwaServerWebSocket.class.getName();
+
     private Actions<ServerWebSocket> wsActions = new ConcurrentActions<>();
-    private JwaServerWebSocket ws;
+    private int maxPendingSends = 1024;
 
     @Override
     @OnOpen
     public void onOpen(Session session, EndpointConfig config) {
-        ws = new JwaServerWebSocket(session);
+        JwaServerWebSocket ws = new JwaServerWebSocket(session, maxPendingSends);
+        session.getUserProperties().put(KEY, ws);
         wsActions.fire(ws);
     }
 
     @Override
     @OnError
     public void onError(Session session, Throwable throwable) {
-        ws.onError(throwable);
+        JwaServerWebSocket ws = (JwaServerWebSocket) session.getUserProperties().get(KEY);
+        if (ws != null) {
+            ws.onError(throwable);
+        }
     }
 
     @Override
     @OnClose
     public void onClose(Session session, CloseReason closeReason) {
-        ws.onClose();
+        JwaServerWebSocket ws = (JwaServerWebSocket) session.getUserProperties().remove(KEY);
+        if (ws != null) {
+            ws.onClose();
+        }
+    }
+
+    /**
+     * The max number of messages waiting for the one being sent per
+     * {@link ServerWebSocket}. If it's exceeded, the connection is closed.
+     * The default value is 1024.
+     */
+    public VibeServerEndpoint maxPendingSends(int maxPendingSends) {
+        this.maxPendingSends = maxPendingSends;
+        return this;
     }
 
     /**
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.bridge.jwa1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.websocket.Extension;
+import javax.websocket.server.ServerEndpointConfig;
+
+import org.atmosphere.vibe.platform.websocket.PerMessageDeflate;
+
+/**
+ * Configurator for {@link VibeServerEndpoint}. If it's configured with
+ * {@link PerMessageDeflate} and the container has installed
+ * {@code permessage-deflate} extension, the extension is negotiated according
+ * to the options and the container compresses messages natively.
+ * <p>
+ * If it's configured with an endpoint by
+ * {@link VibeServerEndpointConfigurator#endpoint(VibeServerEndpoint)}, that
+ * instance serves every session instead of one being created per connection.
+ * <p>
+ *
+ * <pre>
+ * ServerEndpointConfig config = ServerEndpointConfig.Builder.create(VibeServerEndpoint.class, "/vibe")
+ * .configurator(new VibeServerEndpointConfigurator() {
+ *     {@literal @}Override
+ *     protected &ltT&gt T getEndpointInstance(Class&ltT&gt endpointClass) throws InstantiationException {
+ *         return endpointClass.cast(new VibeServerEndpoint().onwebsocket(ws -&gt {}));
+ *     }
+ * }
+ * .compression(new PerMessageDeflate()))
+ * .build();
+ * </pre>
+ *
+ * <pre>
+ * ServerEndpointConfig config = ServerEndpointConfig.Builder.create(VibeServerEndpoint.class, "/vibe")
+ * .configurator(new VibeServerEndpointConfigurator().endpoint(new VibeServerEndpoint().onwebsocket(ws -&gt {})))
+ * .build();
+ * </pre>
+ */
+public class VibeServerEndpointConfigurator extends ServerEndpointConfig.Configurator {
+
+    private PerMessageDeflate compression;
+    private VibeServerEndpoint endpoint;
+
+    /**
+     * Negotiates {@code permessage-deflate} with the given options.
+     */
+    public VibeServerEndpointConfigurator compression(PerMessageDeflate compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Uses the given endpoint for every session.
+     */
+    public VibeServerEndpointConfigurator endpoint(VibeServerEndpoint endpoint) {
+        this.endpoint = endpoint;
+        return this;
+    }
+
+    @Override
+    public <T> T getEndpointInstance(Class<T> endpointClass) throws InstantiationException {
+        if (endpoint != null && endpointClass.isInstance(endpoint)) {
+            return endpointClass.cast(endpoint);
+        }
+        return super.getEndpointInstance(endpointClass);
+    }
+
+    @Override
+    public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+        List<Extension> negotiated = new ArrayList<>(super.getNegotiatedExtensions(installed, requested));
+        if (compression == null || !contains(installed, PerMessageDeflate.NAME)) {
+            return negotiated;
+        }
+        // Replaces the container's choice
+        for (int i = 0; i < negotiated.size(); i++) {
+            if (negotiated.get(i).getName().equals(PerMessageDeflate.NAME)) {
+                negotiated.remove(i--);
+            }
+        }
+        StringBuilder offers = new StringBuilder();
+        for (Extension extension : requested) {
+            if (extension.getName().equals(PerMessageDeflate.NAME)) {
+                if (offers.length() > 0) {
+                    offers.append(", ");
+                }
+                offers.append(extension.getName());
+                for (Extension.Parameter parameter : extension.getParameters()) {
+                    offers.append("; ").append(parameter.getName());
+                    if (parameter.getValue() != null) {
+                        offers.append("=").append(parameter.getValue());
+                    }
+                }
+            }
+        }
+        Map<String, String> params = compression.negotiate(offers.length() > 0 ? offers.toString() : null);
+        if (params != null) {
+            negotiated.add(new PerMessageDeflateExtension(params));
+        }
+        return negotiated;
+    }
+
+    private static boolean contains(List<Extension> extensions, String name) {
+        for (Extension extension : extensions) {
+            if (extension.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class PerMessageDeflateExtension implements Extension {
+
+        private final List<Parameter> parameters = new ArrayList<>();
+
+        PerMessageDeflateExtension(Map<String, String> params) {
+            for (final Map.Entry<String, String> entry : params.entrySet()) {
+                parameters.add(new Parameter() {
+                    @Override
+                    public String getName() {
+                        return entry.getKey();
+                    }
+
+                    @Override
+                    public String getValue() {
+                        return entry.getValue();
+                    }
+                });
+            }
+        }
+
+        @Override
+        public String getName() {
+            return PerMessageDeflate.NAME;
+        }
+
+        @Override
+        public List<Parameter> getParameters() {
+            return Collections.unmodifiableList(parameters);
+        }
+
+    }
+
+}
@@ -16,20 +16,43 @@
 package org.atmosphere.vibe.platform.bridge.jwa1;
 
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 import javax.websocket.server.ServerContainer;
 import javax.websocket.server.ServerEndpointConfig;
-import javax.websocket.server.ServerEndpointConfig.Configurator;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.test.ServerWebSocketTest;
+import org.atmosphere.vibe.platform.websocket.PerMessageDeflate;
 import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
 import org.eclipse.jetty.websocket.jsr356.server.deploy.WebSocketServerContainerInitializer;
+import org.eclipse.jetty.websocket.server.WebSocketUpgradeFilter;
 import org.junit.Test;
 
 public class JwaServerWebSocketTest extends ServerWebSocketTest {
@@ -45,13 +68,13 @@ public class JwaServerWebSocketTest extends ServerWebSocketTest {
         ServletContextHandler handler = new ServletContextHandler();
         server.setHandler(handler);
         ServerContainer container = WebSocketServerContainerInitializer.configureContext(handler);
+        // Jetty 9.2 doesn't install the extension by default
+        WebSocketUpgradeFilter.configureContext(handler).getFactory().getExtensionFactory()
+        .register(PerMessageDeflate.NAME, PerMessageDeflateExtension.class);
         ServerEndpointConfig config = ServerEndpointConfig.Builder.create(VibeServerEndpoint.class, "/test")
-        .configurator(new Configurator() {
-            @Override
-            public <T> T getEndpointInstance(Class<T> endpointClass) throws InstantiationException {
-                return endpointClass.cast(new VibeServerEndpoint().onwebsocket(performer.serverAction()));
-            }
-        })
+        .configurator(new VibeServerEndpointConfigurator()
+        .endpoint(new VibeServerEndpoint().onwebsocket(performer.serverAction()))
+        .compression(new PerMessageDeflate().serverNoContextTakeover(true)))
         .build();
         container.addEndpoint(config);
         server.start();
@@ -69,6 +92,137 @@ public class JwaServerWebSocketTest extends ServerWebSocketTest {
         .connect();
     }
 
+    @Test
+    public void permessage_deflate() throws Exception {
+        final String text = "{\"type\":\"message\",\"data\":\"A Will Remains in the Ashes\"}";
+        final AtomicReference<String> echo = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        performer.onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(final ServerWebSocket ws) {
+                ws.ontext(new Action<String>() {
+                    @Override
+                    public void on(String data) {
+                        ws.send(data);
+                    }
+                });
+            }
+        });
+        WebSocketClient client = new WebSocketClient();
+        client.getExtensionFactory().register(PerMessageDeflate.NAME, PerMessageDeflateExtension.class);
+        client.start();
+        try {
+            ClientUpgradeRequest request = new ClientUpgradeRequest();
+            request.addExtensions(PerMessageDeflate.NAME);
+            org.eclipse.jetty.websocket.api.Session session = client.connect(new WebSocketAdapter() {
+                @Override
+                public void onWebSocketText(String message) {
+                    echo.set(message);
+                    latch.countDown();
+                }
+            }, URI.create("ws://localhost:" + port + "/test"), request).get(5, TimeUnit.SECONDS);
+            // Negotiated according to the options
+            ExtensionConfig extension = session.getUpgradeResponse().getExtensions().get(0);
+            assertThat(extension.getName(), is(PerMessageDeflate.NAME));
+            assertThat(extension.getParameterKeys().contains("server_no_context_takeover"), is(true));
+            session.getRemote().sendString(text);
+            assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+        } finally {
+            client.stop();
+        }
+        assertThat(echo.get(), is(text));
+    }
+
+    @Test
+    public void send_without_waiting() {
+        // Sends which overlap in-flight ones should be queued in order
+        final int n = 10000;
+        performer.onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                for (int i = 0; i < n; i++) {
+                    ws.send(Integer.toString(i));
+                }
+            }
+        })
+        .clientListener(new WebSocketAdapter() {
+            int count;
+
+            @Override
+            public void onWebSocketText(String message) {
+                assertThat(message, is(Integer.toString(count)));
+                if (++count == n) {
+                    performer.start();
+                }
+            }
+        })
+        .connect();
+    }
+
+    @Test
+    public void send_queue() {
+        // Sends complete only when the test says so
+        final List<Object> sent = new ArrayList<>();
+        final List<SendHandler> handlers = new ArrayList<>();
+        final AtomicReference<CloseReason> closeReason = new AtomicReference<>();
+        final RemoteEndpoint.Async remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { RemoteEndpoint.Async.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().startsWith("send")) {
+                        sent.add(args[0]);
+                        handlers.add((SendHandler) args[1]);
+                    }
+                    return null;
+                }
+            });
+        Session session = (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { Session.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                    case "getAsyncRemote":
+                        return remote;
+                    case "getMaxTextMessageBufferSize":
+                    case "getMaxBinaryMessageBufferSize":
+                        return 8192;
+                    case "close":
+                        closeReason.set((CloseReason) args[0]);
+                        return null;
+                    default:
+                        return null;
+                    }
+                }
+            });
+        final List<Throwable> errors = new ArrayList<>();
+        JwaServerWebSocket ws = new JwaServerWebSocket(session, 2);
+        ws.onerror(new Action<Throwable>() {
+            @Override
+            public void on(Throwable throwable) {
+                errors.add(throwable);
+            }
+        });
+        ByteBuffer binary = ByteBuffer.wrap(new byte[] { 0x00 });
+        ws.send("A").send(binary).send("C");
+        // Only the first one is handed over while the others wait
+        assertThat(sent, is(Arrays.<Object> asList("A")));
+        handlers.get(0).onResult(new SendResult());
+        assertThat(sent, is(Arrays.<Object> asList("A", binary)));
+        handlers.get(1).onResult(new SendResult());
+        assertThat(sent, is(Arrays.<Object> asList("A", binary, "C")));
+        ws.send("D").send("E");
+        assertThat(errors.isEmpty(), is(true));
+        // The third waiting message exceeds the limit
+        ws.send("F");
+        assertThat(errors.size(), is(1));
+        assertThat(errors.get(0), instanceOf(IllegalStateException.class));
+        assertThat(closeReason.get().getCloseCode().getCode(), is(1008));
+        // The queue keeps draining in order
+        handlers.get(2).onResult(new SendResult());
+        handlers.get(3).onResult(new SendResult());
+        assertThat(sent, is(Arrays.<Object> asList("A", binary, "C", "D", "E")));
+    }
+
     @Override
     protected void stopServer() throws Exception {
         server.stop();
@@ -17,18 +17,25 @@ package org.atmosphere.vibe.platform.bridge.netty4;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
 import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.LastHttpContent;
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.http.AbstractServerHttpExchange;
@@ -37,6 +44,15 @@ import org.atmosphere.vibe.platform.http.ServerHttpExchange;
 
 /**
  * {@link ServerHttpExchange} for Netty 4.
+ * <p>
+ * Chunks written in the same turn of the channel's event loop are flushed
+ * at once instead of one by one. The response is written in the event loop
+ * in the order of the calls, even if they are made by other threads. A heap
+ * buffer is copied to a buffer from the channel's allocator, which is pooled
+ * if the channel is configured with {@code PooledByteBufAllocator}. A direct
+ * buffer is written without a copy. Either way, a given buffer is owned by
+ * the exchange and shouldn't be modified after the call, as specified by
+ * {@link ServerHttpExchange#write(ByteBuffer)}.
  *
  * @author Donghwan Kim
  */
@@ -45,14 +61,37 @@ public class NettyServerHttpExchange extends AbstractServerHttpExchange {
     private final ChannelHandlerContext context;
     private final HttpRequest request;
     private final HttpResponse response;
+    private final boolean keepAlive;
     private boolean written;
+    private boolean requestEnded;
+    private boolean responseEnded;
     private Action<ByteBuffer> chunkAction;
+    // Accessed only in the channel's event loop
+    private boolean flushScheduled;
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            context.flush();
+        }
+    };
 
     public NettyServerHttpExchange(ChannelHandlerContext context, HttpRequest request) {
         this.context = context;
         this.request = request;
         this.response = new DefaultHttpResponse(request.getProtocolVersion(), HttpResponseStatus.OK, false);
-        response.headers().set(HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+        // Chunked encoding is available only in HTTP/1.1 so that the connection
+        // can be reused only in that case. Otherwise, closing the connection
+        // delimits the response body.
+        if (request.getProtocolVersion().equals(HttpVersion.HTTP_1_1)) {
+            keepAlive = HttpHeaders.isKeepAlive(request);
+            response.headers().set(HttpHeaders.Names.TRANSFER_ENCODING, HttpHeaders.Values.CHUNKED);
+        } else {
+            keepAlive = false;
+        }
+        if (!keepAlive) {
+            response.headers().set(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+        }
     }
 
     void handleError(Throwable cause) {
@@ -74,13 +113,31 @@ public class NettyServerHttpExchange extends AbstractServerHttpExchange {
     }
 
     @Override
-    public Set<String> headerNames() {
-        return request.headers().names();
-    }
+    protected org.atmosphere.vibe.platform.http.HttpHeaders createHeaders() {
+        // Netty's headers are case-insensitive already
+        return new org.atmosphere.vibe.platform.http.HttpHeaders() {
+            Set<String> names;
 
-    @Override
-    public List<String> headers(String name) {
-        return request.headers().getAll(name);
+            @Override
+            public Set<String> names() {
+                if (names == null) {
+                    Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+                    set.addAll(request.headers().names());
+                    names = Collections.unmodifiableSet(set);
+                }
+                return names;
+            }
+
+            @Override
+            public String get(String name) {
+                return request.headers().get(name);
+            }
+
+            @Override
+            public List<String> getAll(String name) {
+                return request.headers().getAll(name);
+            }
+        };
     }
 
     @Override
@@ -96,10 +153,31 @@ public class NettyServerHttpExchange extends AbstractServerHttpExchange {
             this.chunkAction.on(buf.nioBuffer());
         }
         if (chunk instanceof LastHttpContent) {
+            requestEnded = true;
             endActions.fire();
         }
     }
 
+    /**
+     * Whether the request has been fully read. It must be accessed only in the
+     * channel's event loop.
+     */
+    boolean requestEnded() {
+        return requestEnded;
+    }
+
+    /**
+     * Whether the response has been fully written. It must be accessed only in
+     * the channel's event loop.
+     */
+    boolean responseEnded() {
+        return responseEnded;
+    }
+
+    void setResponseEnded() {
+        responseEnded = true;
+    }
+
     @Override
     protected void doSetStatus(HttpStatus status) {
         response.setStatus(new HttpResponseStatus(status.code(), status.reason()));
@@ -112,21 +190,88 @@ public class NettyServerHttpExchange extends AbstractServerHttpExchange {
 
     @Override
     protected void doWrite(ByteBuffer byteBuffer) {
-        ByteBuf buf = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(byteBuffer));
-        if (!written) {
-            written = true;
+        final boolean first = !written;
+        written = true;
+        final HttpContent chunk = new DefaultHttpContent(toByteBuf(byteBuffer));
+        inEventLoop(new Runnable() {
+            @Override
+            public void run() {
+                write(first, chunk);
+            }
+        });
+    }
+
+    // Runs the given task in the event loop in the order of calls so that
+    // the end can't overtake pending chunks
+    private void inEventLoop(Runnable task) {
+        if (context.executor().inEventLoop()) {
+            task.run();
+        } else {
+            context.executor().execute(task);
+        }
+    }
+
+    // Flushes once the event loop has run the tasks submitted so far so that
+    // successive chunks share a flush
+    private void write(boolean first, HttpContent chunk) {
+        if (first) {
             context.write(response);
         }
-        context.writeAndFlush(buf);
+        context.write(chunk);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            context.executor().execute(flushTask);
+        }
+    }
+
+    // The transport copies a heap buffer to a direct one anyway
+    private ByteBuf toByteBuf(ByteBuffer byteBuffer) {
+        if (byteBuffer.isDirect()) {
+            return Unpooled.wrappedBuffer(byteBuffer);
+        }
+        ByteBuf buf = context.alloc().ioBuffer(byteBuffer.remaining());
+        buf.writeBytes(byteBuffer);
+        return buf;
     }
 
     @Override
     protected void doEnd() {
-        if (!written) {
-            written = true;
-            context.write(response);
+        final boolean first = !written;
+        written = true;
+        inEventLoop(new Runnable() {
+            @Override
+            public void run() {
+                if (first) {
+                    context.write(response);
+                }
+                writeLast(LastHttpContent.EMPTY_LAST_CONTENT);
+            }
+        });
+    }
+
+    private void writeLast(Object last) {
+        if (keepAlive) {
+            context.writeAndFlush(last);
+        } else {
+            context.writeAndFlush(last).addListener(ChannelFutureListener.CLOSE);
         }
-        context.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+    }
+
+    @Override
+    protected void doEnd(ByteBuffer byteBuffer) {
+        // The whole body is available so that it can be sent at once with
+        // content-length instead of chunks
+        written = true;
+        final FullHttpResponse fullResponse = new DefaultFullHttpResponse(response.getProtocolVersion(), response.getStatus(), toByteBuf(byteBuffer), false);
+        fullResponse.headers().set(response.headers());
+        HttpHeaders.removeTransferEncodingChunked(fullResponse);
+        HttpHeaders.setContentLength(fullResponse, fullResponse.content().readableBytes());
+        inEventLoop(new Runnable() {
+            @Override
+            public void run() {
+                writeLast(fullResponse);
+            }
+        });
     }
 
     @Override
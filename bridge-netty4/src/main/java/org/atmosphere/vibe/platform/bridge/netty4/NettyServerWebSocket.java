@@ -15,18 +15,26 @@
  */
 package org.atmosphere.vibe.platform.bridge.netty4;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
 
 import org.atmosphere.vibe.platform.websocket.AbstractServerWebSocket;
+import org.atmosphere.vibe.platform.websocket.PerMessageDeflateCodec;
 import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
 
 /**
@@ -36,32 +44,137 @@ import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
  */
 public class NettyServerWebSocket extends AbstractServerWebSocket {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // RSV1 bit indicates a compressed message
+    private static final int RSV1 = 4;
+    private static final int TOO_BIG = 1009;
+
     private final ChannelHandlerContext context;
     private final FullHttpRequest request;
     private final WebSocketServerHandshaker handshaker;
+    private final PerMessageDeflateCodec codec;
+    private boolean codecClosed;
+    // The type of the message being received in fragments
+    private boolean fragmentedText;
+    private boolean fragmentedCompressed;
+    private ByteBuf compressedMessage;
+    private boolean discarding;
+    // Set when the decompression context is lost
+    private boolean inflationAborted;
+    private boolean sendingFragments;
 
     public NettyServerWebSocket(ChannelHandlerContext context, FullHttpRequest req, WebSocketServerHandshaker handshaker) {
+        this(context, req, handshaker, null);
+    }
+
+    /**
+     * Creates a WebSocket which has negotiated {@code permessage-deflate} if
+     * the given codec is not {@code null}.
+     */
+    public NettyServerWebSocket(ChannelHandlerContext context, FullHttpRequest req, WebSocketServerHandshaker handshaker, PerMessageDeflateCodec codec) {
         this.context = context;
         this.request = req;
         this.handshaker = handshaker;
+        this.codec = codec;
     }
 
     void handleFrame(WebSocketFrame frame) {
-        if (frame instanceof TextWebSocketFrame) {
-            textActions.fire(((TextWebSocketFrame) frame).text());
-        } else if (frame instanceof BinaryWebSocketFrame) {
-            binaryActions.fire(frame.content().nioBuffer());
+        if (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame) {
+            fragmentedText = frame instanceof TextWebSocketFrame;
+            fragmentedCompressed = codec != null && (frame.rsv() & RSV1) != 0;
+            handleData(frame);
+        } else if (frame instanceof ContinuationWebSocketFrame) {
+            handleData(frame);
+        } else if (frame instanceof PingWebSocketFrame) {
+            context.writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
+        } else if (frame instanceof PongWebSocketFrame) {
+            pongActions.fire(frame.content().nioBuffer());
         } else if (frame instanceof CloseWebSocketFrame) {
             handshaker.close(context.channel(), (CloseWebSocketFrame) frame.retain());
             closeActions.fire();
         }
     }
     
+    private void handleData(WebSocketFrame frame) {
+        boolean last = frame.isFinalFragment();
+        if (inflationAborted) {
+            return;
+        }
+        if (fragmentedCompressed) {
+            if (discarding) {
+                discarding = !last;
+                return;
+            }
+            // The limit applies to both the compressed message being
+            // assembled and the decompressed one
+            long maxSize = codec.maxDecompressedSize();
+            long maxMessageSize = maxMessageSize();
+            if (maxMessageSize > 0 && maxMessageSize < maxSize) {
+                maxSize = maxMessageSize;
+            }
+            // A compressed message can be inflated only as a whole
+            if (compressedMessage != null || !last) {
+                if (compressedMessage == null) {
+                    compressedMessage = Unpooled.buffer(frame.content().readableBytes() * 2);
+                }
+                if (compressedMessage.readableBytes() + frame.content().readableBytes() > maxSize) {
+                    compressedMessage.release();
+                    compressedMessage = null;
+                    discarding = !last;
+                    close(TOO_BIG, "Message too big");
+                    return;
+                }
+                compressedMessage.writeBytes(frame.content());
+                if (!last) {
+                    return;
+                }
+            }
+            ByteBuf message = compressedMessage != null ? compressedMessage : frame.content();
+            compressedMessage = null;
+            ByteBuffer data;
+            try {
+                data = codec.decompress(message.nioBuffer(), maxSize);
+                if (data == null) {
+                    inflationAborted = true;
+                    close(TOO_BIG, "Message too big");
+                    return;
+                }
+            } catch (DataFormatException e) {
+                errorActions.fire(e);
+                context.close();
+                return;
+            } finally {
+                if (message != frame.content()) {
+                    message.release();
+                }
+            }
+            if (fragmentedText) {
+                handleTextFragment(data, true);
+            } else {
+                handleBinaryFragment(data, true);
+            }
+        } else if (fragmentedText) {
+            handleTextFragment(frame.content().nioBuffer(), last);
+        } else {
+            handleBinaryFragment(frame.content().nioBuffer(), last);
+        }
+    }
+
     void handleError(Throwable e) {
         errorActions.fire(e);
     }
 
     void handleClose() {
+        if (compressedMessage != null) {
+            compressedMessage.release();
+            compressedMessage = null;
+        }
+        if (codec != null) {
+            synchronized (codec) {
+                codecClosed = true;
+                codec.close();
+            }
+        }
         closeActions.fire();
     }
 
@@ -72,12 +185,53 @@ public class NettyServerWebSocket extends AbstractServerWebSocket {
 
     @Override
     protected void doSend(ByteBuffer byteBuffer) {
-        context.writeAndFlush(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(byteBuffer)));
+        if (codec != null && codec.compressible(byteBuffer.remaining())) {
+            sendCompressed(byteBuffer, false);
+        } else {
+            context.writeAndFlush(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(byteBuffer)));
+        }
     }
 
     @Override
     protected void doSend(String data) {
-        context.writeAndFlush(new TextWebSocketFrame(data));
+        if (codec != null) {
+            // The threshold is in bytes
+            ByteBuffer encoded = UTF_8.encode(data);
+            if (codec.compressible(encoded.remaining())) {
+                sendCompressed(encoded, true);
+            } else {
+                context.writeAndFlush(new TextWebSocketFrame(Unpooled.wrappedBuffer(encoded)));
+            }
+        } else {
+            context.writeAndFlush(new TextWebSocketFrame(data));
+        }
+    }
+
+    // Fragments are written without compression which is allowed per message
+    @Override
+    protected void doSend(ByteBuffer fragment, boolean last) {
+        ByteBuf data = Unpooled.wrappedBuffer(fragment);
+        context.writeAndFlush(sendingFragments ? new ContinuationWebSocketFrame(last, 0, data) : new BinaryWebSocketFrame(last, 0, data));
+        sendingFragments = !last;
+    }
+
+    // Messages may be sent by any thread but they must be written in the order
+    // they are compressed
+    private void sendCompressed(ByteBuffer data, boolean text) {
+        synchronized (codec) {
+            if (codecClosed) {
+                return;
+            }
+            ByteBuffer compressed = codec.compress(data);
+            context.writeAndFlush(text ?
+                new TextWebSocketFrame(true, RSV1, Unpooled.wrappedBuffer(compressed)) :
+                new BinaryWebSocketFrame(true, RSV1, Unpooled.wrappedBuffer(compressed)));
+        }
+    }
+
+    @Override
+    protected void doPing(ByteBuffer data) {
+        context.writeAndFlush(new PingWebSocketFrame(Unpooled.wrappedBuffer(data)));
     }
 
     @Override
@@ -85,6 +239,11 @@ public class NettyServerWebSocket extends AbstractServerWebSocket {
         context.close();
     }
 
+    @Override
+    protected void doClose(int code, String reason) {
+        context.writeAndFlush(new CloseWebSocketFrame(code, reason)).addListener(ChannelFutureListener.CLOSE);
+    }
+
     @Override
     public <T> T unwrap(Class<T> clazz) {
         return ChannelHandlerContext.class.isAssignableFrom(clazz) ? 
@@ -93,7 +252,9 @@ public class NettyServerWebSocket extends AbstractServerWebSocket {
                 clazz.cast(handshaker) : 
                     FullHttpRequest.class.isAssignableFrom(clazz) ?
                         clazz.cast(request) :
-                        null;
+                        PerMessageDeflateCodec.class.isAssignableFrom(clazz) ?
+                            clazz.cast(codec) :
+                            null;
     }
 
 }
\ No newline at end of file
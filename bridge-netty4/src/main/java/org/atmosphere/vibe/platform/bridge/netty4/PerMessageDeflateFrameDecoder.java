@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.bridge.netty4;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameDecoder;
+
+import java.util.List;
+
+/**
+ * Decodes WebSocket version 13 frames sent by a client which has negotiated
+ * {@code permessage-deflate}. Unlike Netty's own decoder, the payload of text
+ * frames is not validated as UTF-8 as it may be compressed.
+ */
+class PerMessageDeflateFrameDecoder extends ByteToMessageDecoder implements WebSocketFrameDecoder {
+
+    private static final int PROTOCOL_ERROR = 1002;
+    private static final int TOO_BIG = 1009;
+
+    private final int maxFramePayloadLength;
+    private boolean closed;
+
+    PerMessageDeflateFrameDecoder(int maxFramePayloadLength) {
+        this.maxFramePayloadLength = maxFramePayloadLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (closed) {
+            in.skipBytes(in.readableBytes());
+            return;
+        }
+        while (in.readableBytes() >= 2) {
+            int start = in.readerIndex();
+            int b1 = in.getUnsignedByte(start);
+            int b2 = in.getUnsignedByte(start + 1);
+            boolean fin = (b1 & 0x80) != 0;
+            int rsv = (b1 & 0x70) >> 4;
+            int opcode = b1 & 0x0F;
+            if ((b2 & 0x80) == 0) {
+                // A client must mask every frame
+                protocolViolation(ctx, in);
+                return;
+            }
+            int length = b2 & 0x7F;
+            // A control frame must not be fragmented and its payload must
+            // be 125 bytes or less
+            if ((opcode & 0x08) != 0 && (!fin || length > 125)) {
+                protocolViolation(ctx, in);
+                return;
+            }
+            int headerLength = 2;
+            if (length == 126) {
+                if (in.readableBytes() < 4) {
+                    return;
+                }
+                length = in.getUnsignedShort(start + 2);
+                headerLength += 2;
+            } else if (length == 127) {
+                if (in.readableBytes() < 10) {
+                    return;
+                }
+                long longLength = in.getLong(start + 2);
+                // The most significant bit must be 0
+                if (longLength < 0) {
+                    protocolViolation(ctx, in);
+                    return;
+                }
+                if (longLength > maxFramePayloadLength) {
+                    fail(ctx, in, TOO_BIG);
+                    return;
+                }
+                length = (int) longLength;
+                headerLength += 8;
+            }
+            if (length > maxFramePayloadLength) {
+                fail(ctx, in, TOO_BIG);
+                return;
+            }
+            if (in.readableBytes() < headerLength + 4 + length) {
+                return;
+            }
+            int mask = in.getInt(start + headerLength);
+            in.skipBytes(headerLength + 4);
+            ByteBuf payload = ctx.alloc().buffer(length);
+            in.readBytes(payload, length);
+            unmask(payload, mask);
+            switch (opcode) {
+            case 0x0:
+                out.add(new ContinuationWebSocketFrame(fin, rsv, payload));
+                break;
+            case 0x1:
+                out.add(new TextWebSocketFrame(fin, rsv, payload));
+                break;
+            case 0x2:
+                out.add(new BinaryWebSocketFrame(fin, rsv, payload));
+                break;
+            case 0x8:
+                closed = true;
+                out.add(new CloseWebSocketFrame(fin, rsv, payload));
+                in.skipBytes(in.readableBytes());
+                return;
+            case 0x9:
+                out.add(new PingWebSocketFrame(fin, rsv, payload));
+                break;
+            case 0xA:
+                out.add(new PongWebSocketFrame(fin, rsv, payload));
+                break;
+            default:
+                payload.release();
+                protocolViolation(ctx, in);
+                return;
+            }
+        }
+    }
+
+    // Unmasks eight bytes at a time in place. ByteBuf's multi-byte accessors
+    // are big-endian so the mask's first byte lines up with the payload's.
+    private static void unmask(ByteBuf payload, int mask) {
+        long longMask = (mask & 0xFFFFFFFFL) | ((long) mask << 32);
+        int i = payload.readerIndex();
+        int end = payload.writerIndex();
+        for (; i + 8 <= end; i += 8) {
+            payload.setLong(i, payload.getLong(i) ^ longMask);
+        }
+        for (int j = 0; i < end; i++, j++) {
+            payload.setByte(i, payload.getByte(i) ^ (mask >>> (24 - 8 * (j & 3))));
+        }
+    }
+
+    private void protocolViolation(ChannelHandlerContext ctx, ByteBuf in) {
+        fail(ctx, in, PROTOCOL_ERROR);
+    }
+
+    private void fail(ChannelHandlerContext ctx, ByteBuf in, int code) {
+        closed = true;
+        in.skipBytes(in.readableBytes());
+        if (ctx.channel().isActive()) {
+            ctx.writeAndFlush(new CloseWebSocketFrame(code, null)).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.bridge.netty4;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpServerCodec;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bootstrap to run {@link VibeServerCodec} on a Netty server with settings
+ * suitable for production. The native epoll transport is used if
+ * {@code netty-transport-native-epoll} is on the classpath and supported by
+ * the system, and the NIO transport is used otherwise.
+ * <p>
+ * The codec is shared by every connection. To configure the pipeline
+ * differently, for example to add {@code SslHandler}, override
+ * {@link VibeNettyServer#initChannel(SocketChannel)}.
+ *
+ * <pre>
+ * VibeNettyServer server = new VibeNettyServer()
+ * .port(8080)
+ * .codec(new VibeServerCodec().onhttp(http -&gt {}).onwebsocket(ws -&gt {}))
+ * .start();
+ * // To stop
+ * server.stop();
+ * </pre>
+ */
+public class VibeNettyServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(VibeNettyServer.class);
+
+    private String host;
+    private int port = 8080;
+    private VibeServerCodec codec = new VibeServerCodec();
+    private boolean nativeTransport = true;
+    private int bossThreads = 1;
+    private int workerThreads;
+    private boolean reusePort;
+    private int backlog = 1024;
+    private boolean tcpNoDelay = true;
+    private int writeBufferLowWaterMark = 32 * 1024;
+    private int writeBufferHighWaterMark = 64 * 1024;
+    private ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    private boolean epoll;
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private final List<Channel> channels = new ArrayList<>();
+
+    /**
+     * The host to bind. By default, every address of the machine is bound.
+     */
+    public VibeNettyServer host(String host) {
+        this.host = host;
+        return this;
+    }
+
+    /**
+     * The port to bind. The default value is 8080.
+     */
+    public VibeNettyServer port(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * The codec handling every connection.
+     */
+    public VibeNettyServer codec(VibeServerCodec codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Whether to use the native epoll transport if it's available. The
+     * default value is true.
+     */
+    public VibeNettyServer nativeTransport(boolean nativeTransport) {
+        this.nativeTransport = nativeTransport;
+        return this;
+    }
+
+    /**
+     * The number of threads accepting connections. The default value is 1.
+     * More than one is only useful with
+     * {@link VibeNettyServer#reusePort(boolean)}.
+     */
+    public VibeNettyServer bossThreads(int bossThreads) {
+        this.bossThreads = bossThreads;
+        return this;
+    }
+
+    /**
+     * The number of threads handling connections. The default value is 0,
+     * which means twice the number of available processors.
+     */
+    public VibeNettyServer workerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    /**
+     * Whether to bind the port with {@code SO_REUSEPORT} once per boss
+     * thread so that the kernel spreads incoming connections over the
+     * acceptors. It requires the native transport and is ignored with a
+     * warning otherwise. The default value is false.
+     */
+    public VibeNettyServer reusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+        return this;
+    }
+
+    /**
+     * The max number of connections waiting to be accepted. The default
+     * value is 1024.
+     */
+    public VibeNettyServer backlog(int backlog) {
+        this.backlog = backlog;
+        return this;
+    }
+
+    /**
+     * Whether to disable Nagle's algorithm so that small messages such as
+     * WebSocket frames are sent without delay. The default value is true.
+     */
+    public VibeNettyServer tcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * The low and high water marks of the outbound buffer of a connection in
+     * bytes. A channel becomes unwritable when the buffer exceeds the high
+     * mark and writable again when it drops below the low mark. The default
+     * values are 32KB and 64KB.
+     */
+    public VibeNettyServer writeBufferWaterMark(int low, int high) {
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException("Water marks must satisfy 0 <= low <= high");
+        }
+        this.writeBufferLowWaterMark = low;
+        this.writeBufferHighWaterMark = high;
+        return this;
+    }
+
+    /**
+     * The allocator of buffers. The default value is
+     * {@link PooledByteBufAllocator#DEFAULT}.
+     */
+    public VibeNettyServer allocator(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+        return this;
+    }
+
+    /**
+     * Starts the server and blocks until the port is bound.
+     */
+    public synchronized VibeNettyServer start() {
+        if (bossGroup != null) {
+            throw new IllegalStateException("Server has already started");
+        }
+        epoll = nativeTransport && Epoll.isAvailable();
+        int acceptors = 1;
+        if (reusePort) {
+            if (epoll) {
+                acceptors = bossThreads;
+            } else {
+                logger.warn("SO_REUSEPORT requires the native transport so the port is bound once");
+            }
+        }
+        bossGroup = epoll ? Epoll.newEventLoopGroup(bossThreads) : new NioEventLoopGroup(bossThreads);
+        workerGroup = epoll ? Epoll.newEventLoopGroup(workerThreads) : new NioEventLoopGroup(workerThreads);
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(bossGroup, workerGroup)
+        .channel(epoll ? Epoll.serverChannelClass() : NioServerSocketChannel.class)
+        .option(ChannelOption.SO_BACKLOG, backlog)
+        .option(ChannelOption.SO_REUSEADDR, true)
+        .option(ChannelOption.ALLOCATOR, allocator)
+        .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay)
+        .childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, writeBufferHighWaterMark)
+        .childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, writeBufferLowWaterMark)
+        .childOption(ChannelOption.ALLOCATOR, allocator)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) {
+                VibeNettyServer.this.initChannel(ch);
+            }
+        });
+        if (acceptors > 1) {
+            bootstrap.option(Epoll.soReusePort(), true);
+        }
+        InetSocketAddress address = host == null ? new InetSocketAddress(port) : new InetSocketAddress(host, port);
+        try {
+            // Each bind registers a server channel to the next boss thread
+            for (int i = 0; i < acceptors; i++) {
+                channels.add(bootstrap.bind(address).syncUninterruptibly().channel());
+            }
+        } catch (RuntimeException e) {
+            stop();
+            throw e;
+        }
+        logger.info("Vibe Netty server has started on {} with {} transport", address, epoll ? "epoll" : "NIO");
+        return this;
+    }
+
+    /**
+     * Configures the pipeline of an accepted connection. By default, it adds
+     * {@link HttpServerCodec} and the codec.
+     */
+    protected void initChannel(SocketChannel ch) {
+        ch.pipeline().addLast(new HttpServerCodec()).addLast(codec);
+    }
+
+    /**
+     * Whether the server runs on the native epoll transport.
+     */
+    public synchronized boolean isNative() {
+        return epoll;
+    }
+
+    /**
+     * Unbinds the port and shuts down the event loops gracefully. Connections
+     * still open are closed by the shutdown.
+     */
+    public synchronized void stop() {
+        for (Channel channel : channels) {
+            channel.close().syncUninterruptibly();
+        }
+        channels.clear();
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+            bossGroup = null;
+            workerGroup = null;
+        }
+    }
+
+    // The native transport is an optional dependency so it's accessed through
+    // reflection
+    private static class Epoll {
+
+        static boolean isAvailable() {
+            try {
+                return (Boolean) Class.forName("io.netty.channel.epoll.Epoll").getMethod("isAvailable").invoke(null);
+            } catch (Throwable e) {
+                logger.debug("The native epoll transport is not available so NIO is used");
+                return false;
+            }
+        }
+
+        static EventLoopGroup newEventLoopGroup(int threads) {
+            try {
+                return (EventLoopGroup) Class.forName("io.netty.channel.epoll.EpollEventLoopGroup").getConstructor(int.class).newInstance(threads);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static Class<? extends ServerChannel> serverChannelClass() {
+            try {
+                return Class.forName("io.netty.channel.epoll.EpollServerSocketChannel").asSubclass(ServerChannel.class);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        static ChannelOption<Boolean> soReusePort() {
+            try {
+                return (ChannelOption<Boolean>) Class.forName("io.netty.channel.epoll.EpollChannelOption").getField("SO_REUSEPORT").get(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+}
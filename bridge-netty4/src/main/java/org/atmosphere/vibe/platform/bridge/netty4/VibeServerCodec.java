@@ -15,32 +15,42 @@
  */
 package org.atmosphere.vibe.platform.bridge.netty4;
 
-import io.netty.channel.Channel;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelPipeline;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameDecoder;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
+import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker13;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
 import io.netty.handler.ssl.SslHandler;
-import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
 
+import java.util.ArrayDeque;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.action.Actions;
 import org.atmosphere.vibe.platform.action.ConcurrentActions;
+import org.atmosphere.vibe.platform.action.VoidAction;
 import org.atmosphere.vibe.platform.http.ServerHttpExchange;
+import org.atmosphere.vibe.platform.websocket.PerMessageDeflate;
+import org.atmosphere.vibe.platform.websocket.PerMessageDeflateCodec;
 import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
 
 /**
@@ -49,6 +59,16 @@ import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
  * configure handler, you must add <strong>{@link HttpServerCodec}</strong> in
  * front of this handler.
  * <p>
+ * Persistent connections are supported. Pipelined requests are processed one
+ * by one so that their responses are written in the order of the requests.
+ * Once {@link VibeServerCodec#maxPipelinedRequests(int)} requests are
+ * waiting, the connection stops reading until they are processed. Requests
+ * already read beyond that are discarded and the connection is closed once the
+ * waiting ones are answered, so that the client retries them.
+ * <p>
+ * It keeps no state per connection in its fields so one instance can be
+ * shared by every channel.
+ * <p>
  * 
  * <pre>
  * 
@@ -65,67 +85,222 @@ import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
  *
  * @author Donghwan Kim
  */
+@Sharable
 public class VibeServerCodec extends ChannelInboundHandlerAdapter {
 
+    // Per-connection state lives in the handler context's attributes so that
+    // it's only touched by the channel's event loop
+    private static final AttributeKey<NettyServerHttpExchange> HTTP_KEY = AttributeKey.valueOf(VibeServerCodec.class.getName() + ".http");
+    private static final AttributeKey<NettyServerWebSocket> WS_KEY = AttributeKey.valueOf(VibeServerCodec.class.getName() + ".ws");
+    private static final AttributeKey<Boolean> UPGRADE_KEY = AttributeKey.valueOf(VibeServerCodec.class.getName() + ".upgrade");
+    private static final AttributeKey<PipelineQueue> QUEUE_KEY = AttributeKey.valueOf(VibeServerCodec.class.getName() + ".queue");
+    private static final AttributeKey<Boolean> FORWARD_KEY = AttributeKey.valueOf(VibeServerCodec.class.getName() + ".forward");
+
+    private static final String SEC_WEBSOCKET_EXTENSIONS = "Sec-WebSocket-Extensions";
+
     private Actions<ServerHttpExchange> httpActions = new ConcurrentActions<>();
     private Actions<ServerWebSocket> wsActions = new ConcurrentActions<>();
-    private Map<Channel, NettyServerHttpExchange> httpMap = new ConcurrentHashMap<>();
-    private Map<Channel, NettyServerWebSocket> wsMap = new ConcurrentHashMap<>();
-    private Map<Channel, FullHttpRequest> wsReqMap = new ConcurrentHashMap<>();
+    private PerMessageDeflate compression;
+    // The default of WebSocketServerHandshakerFactory
+    private int maxFramePayloadLength = 65536;
+    private int maxPipelinedRequests = 16;
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        PipelineQueue queue = ctx.attr(QUEUE_KEY).get();
+        if (queue != null && (!queue.isEmpty() || queue.overflowed) && msg instanceof HttpObject) {
+            // Preserves the order of pipelined requests
+            enqueue(ctx, queue, msg);
+            return;
+        }
+        read(ctx, msg);
+    }
+
+    private void read(ChannelHandlerContext ctx, Object msg) {
         if (msg instanceof HttpRequest) {
             HttpRequest req = (HttpRequest) msg;
+            if (ctx.attr(HTTP_KEY).get() != null) {
+                // A pipelined request. It will be processed once the current
+                // exchange completes so that responses are written in order
+                PipelineQueue queue = ctx.attr(QUEUE_KEY).get();
+                if (queue == null) {
+                    queue = new PipelineQueue();
+                    ctx.attr(QUEUE_KEY).set(queue);
+                }
+                enqueue(ctx, queue, msg);
+                return;
+            }
             if (!accept(req)) {
+                ctx.attr(FORWARD_KEY).set(Boolean.TRUE);
                 ctx.fireChannelRead(msg);
                 return;
             }
+            ctx.attr(FORWARD_KEY).remove();
             if (req.getMethod() == HttpMethod.GET && req.headers().contains(HttpHeaders.Names.UPGRADE, HttpHeaders.Values.WEBSOCKET, true)) {
-                // Because WebSocketServerHandshaker requires FullHttpRequest
-                FullHttpRequest wsRequest = new DefaultFullHttpRequest(req.getProtocolVersion(), req.getMethod(), req.getUri());
-                wsRequest.headers().set(req.headers());
-                wsReqMap.put(ctx.channel(), wsRequest);
-                // Set timeout to avoid memory leak
-                ctx.pipeline().addFirst(new ReadTimeoutHandler(5));
+                // An upgrade request has no body so that the handshake can be
+                // done right away without aggregating the request
+                if (!(req instanceof LastHttpContent)) {
+                    ctx.attr(UPGRADE_KEY).set(Boolean.TRUE);
+                }
+                String location = getWebSocketLocation(ctx.pipeline(), req);
+                WebSocketServerHandshakerFactory factory = new WebSocketServerHandshakerFactory(location, null, true, maxFramePayloadLength);
+                WebSocketServerHandshaker handshaker = factory.newHandshaker(req);
+                Map<String, String> params = null;
+                if (compression != null && handshaker instanceof WebSocketServerHandshaker13) {
+                    params = compression.negotiate(req.headers().get(SEC_WEBSOCKET_EXTENSIONS));
+                    if (params != null) {
+                        // Compressed text frames can't be validated as UTF-8
+                        // by Netty's decoder
+                        handshaker = new WebSocketServerHandshaker13(location, null, true, maxFramePayloadLength) {
+                            @Override
+                            protected WebSocketFrameDecoder newWebsocketDecoder() {
+                                return new PerMessageDeflateFrameDecoder(maxFramePayloadLength());
+                            }
+                        };
+                    }
+                }
+                if (handshaker == null) {
+                    WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(ctx.channel());
+                } else {
+                    // Because WebSocketServerHandshaker requires FullHttpRequest
+                    FullHttpRequest wsReq;
+                    if (req instanceof FullHttpRequest) {
+                        wsReq = (FullHttpRequest) req;
+                    } else {
+                        wsReq = new DefaultFullHttpRequest(req.getProtocolVersion(), req.getMethod(), req.getUri(), Unpooled.EMPTY_BUFFER, false);
+                        wsReq.headers().set(req.headers());
+                    }
+                    PerMessageDeflateCodec codec = null;
+                    if (params != null) {
+                        DefaultHttpHeaders responseHeaders = new DefaultHttpHeaders();
+                        responseHeaders.set(SEC_WEBSOCKET_EXTENSIONS, PerMessageDeflate.format(params));
+                        handshaker.handshake(ctx.channel(), wsReq, responseHeaders, ctx.channel().newPromise());
+                        codec = compression.newCodec(params);
+                    } else {
+                        handshaker.handshake(ctx.channel(), wsReq);
+                    }
+                    NettyServerWebSocket ws = new NettyServerWebSocket(ctx, wsReq, handshaker, codec);
+                    ctx.attr(WS_KEY).set(ws);
+                    wsActions.fire(ws);
+                }
             } else {
-                NettyServerHttpExchange http = new NettyServerHttpExchange(ctx, req);
-                httpMap.put(ctx.channel(), http);
+                final ChannelHandlerContext context = ctx;
+                final NettyServerHttpExchange http = new NettyServerHttpExchange(ctx, req);
+                ctx.attr(HTTP_KEY).set(http);
+                http.onfinish(new VoidAction() {
+                    @Override
+                    public void on() {
+                        // The response may be ended by any thread
+                        if (context.executor().inEventLoop()) {
+                            responseEnded(context, http);
+                        } else {
+                            context.executor().execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    responseEnded(context, http);
+                                }
+                            });
+                        }
+                    }
+                });
                 httpActions.fire(http);
             }
         } else if (msg instanceof HttpContent) {
-            FullHttpRequest wsReq = wsReqMap.get(ctx.channel());
-            if (wsReq != null) {
-                wsReq.content().writeBytes(((HttpContent) msg).content());
+            if (ctx.attr(FORWARD_KEY).get() != null) {
                 if (msg instanceof LastHttpContent) {
-                    wsReqMap.remove(ctx.channel());
-                    // Cancel timeout
-                    ctx.pipeline().remove(ReadTimeoutHandler.class);
-                    WebSocketServerHandshakerFactory factory = new WebSocketServerHandshakerFactory(getWebSocketLocation(ctx.pipeline(), wsReq), null, true);
-                    WebSocketServerHandshaker handshaker = factory.newHandshaker(wsReq);
-                    if (handshaker == null) {
-                        WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(ctx.channel());
-                    } else {
-                        handshaker.handshake(ctx.channel(), wsReq);
-                        NettyServerWebSocket ws = new NettyServerWebSocket(ctx, wsReq, handshaker);
-                        wsMap.put(ctx.channel(), ws);
-                        wsActions.fire(ws);
-                    }
+                    ctx.attr(FORWARD_KEY).remove();
                 }
+                ctx.fireChannelRead(msg);
+                return;
+            }
+            if (ctx.attr(UPGRADE_KEY).get() != null) {
+                // The remaining of the upgrade request which has no body
+                if (msg instanceof LastHttpContent) {
+                    ctx.attr(UPGRADE_KEY).remove();
+                }
+                ReferenceCountUtil.release(msg);
             } else {
-                NettyServerHttpExchange http = httpMap.get(ctx.channel());
-                if (http != null) {
-                    http.handleChunk((HttpContent) msg);
+                NettyServerHttpExchange http = ctx.attr(HTTP_KEY).get();
+                try {
+                    if (http != null) {
+                        http.handleChunk((HttpContent) msg);
+                    }
+                } finally {
+                    // The body is handed over as a view valid only during the
+                    // chunk action
+                    ReferenceCountUtil.release(msg);
+                }
+                if (http != null && msg instanceof LastHttpContent && http.responseEnded()) {
+                    complete(ctx, http);
                 }
             }
         } else if (msg instanceof WebSocketFrame) {
-            NettyServerWebSocket ws = wsMap.get(ctx.channel());
-            if (ws != null) {
-                ws.handleFrame((WebSocketFrame) msg);
+            NettyServerWebSocket ws = ctx.attr(WS_KEY).get();
+            try {
+                if (ws != null) {
+                    ws.handleFrame((WebSocketFrame) msg);
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        } else {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    private void enqueue(ChannelHandlerContext ctx, PipelineQueue queue, Object msg) {
+        if (msg instanceof HttpRequest && queue.requests == maxPipelinedRequests) {
+            // Requests decoded from bytes read before reading stopped
+            queue.overflowed = true;
+        }
+        if (queue.overflowed) {
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+        queue.offer(msg);
+        if (msg instanceof HttpRequest && ++queue.requests == maxPipelinedRequests) {
+            // A client pipelining without reading responses shouldn't make
+            // the queue grow without bound
+            ctx.channel().config().setAutoRead(false);
+        }
+    }
+
+    private void responseEnded(ChannelHandlerContext ctx, NettyServerHttpExchange http) {
+        http.setResponseEnded();
+        if (http.requestEnded()) {
+            complete(ctx, http);
+        }
+    }
+
+    // Both the request and the response have ended so that the connection is
+    // ready for the next request
+    private void complete(ChannelHandlerContext ctx, NettyServerHttpExchange http) {
+        if (ctx.attr(HTTP_KEY).get() != http) {
+            return;
+        }
+        ctx.attr(HTTP_KEY).remove();
+        PipelineQueue queue = ctx.attr(QUEUE_KEY).get();
+        if (queue != null) {
+            while (!queue.isEmpty() && !(queue.peek() instanceof HttpRequest && ctx.attr(HTTP_KEY).get() != null)) {
+                Object msg = queue.poll();
+                if (msg instanceof HttpRequest) {
+                    queue.requests--;
+                }
+                read(ctx, msg);
+            }
+            if (queue.isEmpty()) {
+                if (queue.overflowed) {
+                    if (ctx.attr(HTTP_KEY).get() == null) {
+                        // Closes after the responses are written
+                        ctx.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+                    }
+                } else if (!ctx.channel().config().isAutoRead()) {
+                    ctx.channel().config().setAutoRead(true);
+                }
             }
         }
     }
-    
+
     /**
      * Whether to process this request or not. By default, it accepts every
      * request.
@@ -140,11 +315,11 @@ public class VibeServerCodec extends ChannelInboundHandlerAdapter {
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        NettyServerHttpExchange http = httpMap.get(ctx.channel());
+        NettyServerHttpExchange http = ctx.attr(HTTP_KEY).get();
         if (http != null) {
             http.handleError(cause);
         }
-        NettyServerWebSocket ws = wsMap.get(ctx.channel());
+        NettyServerWebSocket ws = ctx.attr(WS_KEY).get();
         if (ws != null) {
             ws.handleError(cause);
         }
@@ -153,15 +328,54 @@ public class VibeServerCodec extends ChannelInboundHandlerAdapter {
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
-        NettyServerHttpExchange http = httpMap.remove(ctx.channel());
+        NettyServerHttpExchange http = ctx.attr(HTTP_KEY).getAndRemove();
         if (http != null) {
             http.handleClose();
         }
-        NettyServerWebSocket ws = wsMap.remove(ctx.channel());
+        NettyServerWebSocket ws = ctx.attr(WS_KEY).getAndRemove();
         if (ws != null) {
             ws.handleClose();
         }
-        wsReqMap.remove(ctx.channel());
+        ctx.attr(UPGRADE_KEY).remove();
+        PipelineQueue queue = ctx.attr(QUEUE_KEY).getAndRemove();
+        if (queue != null) {
+            for (Object msg : queue) {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+    }
+
+    /**
+     * Enables {@code permessage-deflate} for WebSocket connections offering
+     * it. The codec of each connection is available through
+     * {@code ws.unwrap(PerMessageDeflateCodec.class)}.
+     */
+    public VibeServerCodec compression(PerMessageDeflate compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * Sets the max payload length of a WebSocket frame in bytes. A longer
+     * frame is rejected by the decoder before its payload is read. The
+     * default value is 65536. To limit the size of a whole message, use
+     * {@link ServerWebSocket#setMaxMessageSize(long)}.
+     */
+    public VibeServerCodec maxFramePayloadLength(int maxFramePayloadLength) {
+        this.maxFramePayloadLength = maxFramePayloadLength;
+        return this;
+    }
+
+    /**
+     * Sets the max number of pipelined requests waiting for the current
+     * exchange to complete. When it's reached, the connection stops reading
+     * until the waiting requests are processed. Requests already read beyond
+     * that are discarded and the connection is closed after answering the
+     * waiting ones. The default value is 16.
+     */
+    public VibeServerCodec maxPipelinedRequests(int maxPipelinedRequests) {
+        this.maxPipelinedRequests = maxPipelinedRequests;
+        return this;
     }
 
     /**
@@ -182,4 +396,12 @@ public class VibeServerCodec extends ChannelInboundHandlerAdapter {
         return this;
     }
 
+    // Messages of pipelined requests with the number of requests among them
+    // and whether requests beyond the limit have been discarded
+    @SuppressWarnings("serial")
+    private static class PipelineQueue extends ArrayDeque<Object> {
+        int requests;
+        boolean overflowed;
+    }
+
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.bridge.netty4;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.atmosphere.vibe.platform.action.Action;
+import org.atmosphere.vibe.platform.http.ServerHttpExchange;
+import org.atmosphere.vibe.platform.router.HttpRouter;
+import org.atmosphere.vibe.platform.router.Routed;
+import org.atmosphere.vibe.platform.router.WebSocketRouter;
+import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NettyRouterTest {
+
+    int port;
+    VibeNettyServer server;
+
+    @Before
+    public void before() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        HttpRouter httpRouter = new HttpRouter()
+        .get("/users/:id", new Action<Routed<ServerHttpExchange>>() {
+            @Override
+            public void on(Routed<ServerHttpExchange> routed) {
+                routed.target().setHeader("x-user", routed.param("id")).end("user " + routed.param("id"));
+            }
+        })
+        .post("/users/:id", new Action<Routed<ServerHttpExchange>>() {
+            @Override
+            public void on(Routed<ServerHttpExchange> routed) {
+                routed.target().end("updated " + routed.param("id"));
+            }
+        })
+        .all("/any", new Action<Routed<ServerHttpExchange>>() {
+            @Override
+            public void on(Routed<ServerHttpExchange> routed) {
+                routed.target().end(routed.target().method());
+            }
+        });
+        WebSocketRouter wsRouter = new WebSocketRouter()
+        .route("/rooms/:room", new Action<Routed<ServerWebSocket>>() {
+            @Override
+            public void on(Routed<ServerWebSocket> routed) {
+                routed.target().send(routed.param("room"));
+            }
+        });
+        server = new VibeNettyServer().port(port).codec(new VibeServerCodec().onhttp(httpRouter).onwebsocket(wsRouter)).start();
+    }
+
+    @After
+    public void after() {
+        server.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void not_found() throws IOException {
+        HttpURLConnection connection = open("GET", "/posts/1");
+        assertThat(connection.getResponseCode(), is(404));
+    }
+
+    @Test(timeout = 10000)
+    public void method_not_allowed() throws IOException {
+        HttpURLConnection connection = open("DELETE", "/users/1");
+        assertThat(connection.getResponseCode(), is(405));
+        assertThat(connection.getHeaderField("allow"), is("GET, POST, HEAD"));
+    }
+
+    @Test(timeout = 10000)
+    public void params() throws IOException {
+        HttpURLConnection connection = open("GET", "/users/vibe?a=b");
+        assertThat(connection.getResponseCode(), is(200));
+        assertThat(body(connection), is("user vibe"));
+        connection = open("POST", "/users/vibe");
+        assertThat(body(connection), is("updated vibe"));
+    }
+
+    @Test(timeout = 10000)
+    public void head_falls_back_to_get() throws IOException {
+        HttpURLConnection connection = open("HEAD", "/users/vibe");
+        assertThat(connection.getResponseCode(), is(200));
+        assertThat(connection.getHeaderField("x-user"), is("vibe"));
+    }
+
+    @Test(timeout = 10000)
+    public void any() throws IOException {
+        assertThat(body(open("PUT", "/any")), is("PUT"));
+        assertThat(body(open("DELETE", "/any")), is("DELETE"));
+    }
+
+    @Test(timeout = 10000)
+    public void websocket() throws Exception {
+        final AtomicReference<String> message = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        WebSocketClient client = new WebSocketClient();
+        client.start();
+        try {
+            Session session = client.connect(new WebSocketAdapter() {
+                @Override
+                public void onWebSocketText(String data) {
+                    message.set(data);
+                    latch.countDown();
+                }
+            }, URI.create("ws://localhost:" + port + "/rooms/lobby?a=b")).get(5, TimeUnit.SECONDS);
+            assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+            session.close();
+        } finally {
+            client.stop();
+        }
+        assertThat(message.get(), is("lobby"));
+    }
+
+    private HttpURLConnection open(String method, String uri) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + uri).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private String body(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int n; (n = in.read(buffer)) != -1;) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), "ISO-8859-1");
+        }
+    }
+
+}
@@ -16,8 +16,12 @@
 package org.atmosphere.vibe.platform.bridge.netty4;
 
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
@@ -32,11 +36,20 @@ import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.http.ServerHttpExchange;
 import org.atmosphere.vibe.platform.test.ServerHttpExchangeTest;
+import org.eclipse.jetty.client.api.Response;
 import org.junit.Test;
 
 public class NettyServerHttpExchangeTest extends ServerHttpExchangeTest {
@@ -72,7 +85,7 @@ public class NettyServerHttpExchangeTest extends ServerHttpExchangeTest {
                 .onhttp(performer.serverAction()));
             }
         });
-        channels.add(bootstrap.bind(port).channel());
+        channels.add(bootstrap.bind(port).syncUninterruptibly().channel());
     }
 
     @Override
@@ -96,4 +109,157 @@ public class NettyServerHttpExchangeTest extends ServerHttpExchangeTest {
         .send();
     }
 
+    @Test
+    public void end_with_content_length() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                http.end("Hello");
+            }
+        })
+        .responseListener(new Response.Listener.Adapter() {
+            @Override
+            public void onSuccess(Response response) {
+                assertThat(response.getHeaders().get("content-length"), is("5"));
+                assertThat(response.getHeaders().get("transfer-encoding"), nullValue());
+                performer.start();
+            }
+        })
+        .send();
+    }
+
+    @Test
+    public void pipelining() throws Exception {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(final ServerHttpExchange http) {
+                if (http.uri().endsWith("first")) {
+                    // Ends the first response after the second request arrives
+                    new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                Thread.sleep(500);
+                            } catch (InterruptedException e) {
+                                throw new RuntimeException(e);
+                            }
+                            http.end("first");
+                        }
+                    })
+                    .start();
+                } else {
+                    http.end("second");
+                }
+            }
+        });
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /test?first HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+                "GET /test?second HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes("ISO-8859-1"));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            String response = "";
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            while (!response.contains("second") && (bytesRead = in.read(buffer)) != -1) {
+                received.write(buffer, 0, bytesRead);
+                response = new String(received.toByteArray(), Charset.forName("ISO-8859-1"));
+            }
+            assertThat(response.contains("first"), is(true));
+            assertThat(response.indexOf("first"), lessThan(response.indexOf("second")));
+        }
+    }
+
+    @Test
+    public void write_and_end_by_another_thread() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(final ServerHttpExchange http) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < 100; i++) {
+                            http.write(Integer.toString(i % 10));
+                        }
+                        http.end();
+                    }
+                })
+                .start();
+            }
+        })
+        .responseListener(new Response.Listener.Adapter() {
+            StringBuilder body = new StringBuilder();
+
+            @Override
+            public void onContent(Response response, ByteBuffer content) {
+                body.append(Charset.forName("ISO-8859-1").decode(content));
+            }
+
+            @Override
+            public void onSuccess(Response response) {
+                // The end doesn't overtake chunks waiting in the event loop
+                StringBuilder expected = new StringBuilder();
+                for (int i = 0; i < 100; i++) {
+                    expected.append(i % 10);
+                }
+                assertThat(body.toString(), is(expected.toString()));
+                performer.start();
+            }
+        })
+        .send();
+    }
+
+    @Test
+    public void pipelining_stops_reading() throws Exception {
+        final BlockingQueue<ServerHttpExchange> firsts = new LinkedBlockingQueue<>();
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                if (http.uri().endsWith("first")) {
+                    firsts.add(http);
+                } else {
+                    http.end("next");
+                }
+            }
+        });
+        try (Socket socket = new Socket("localhost", port)) {
+            // All of them arrive in one write and are decoded at once
+            StringBuilder requests = new StringBuilder("GET /test?first HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            for (int i = 1; i < 40; i++) {
+                requests.append("GET /test?next HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            }
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.toString().getBytes("ISO-8859-1"));
+            out.flush();
+            ServerHttpExchange first = firsts.take();
+            Channel channel = first.unwrap(ChannelHandlerContext.class).channel();
+            // Reading stops once too many requests are waiting
+            while (channel.config().isAutoRead()) {
+                Thread.sleep(10);
+            }
+            first.end("first");
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                received.write(buffer, 0, bytesRead);
+            }
+            // Only the first one and the waiting ones up to the limit are
+            // answered and the connection is closed for the client to retry
+            // the rest
+            assertThat(count(received, "HTTP/1.1 200"), is(1 + 16));
+        }
+    }
+
+    private static int count(ByteArrayOutputStream received, String token) {
+        String response = new String(received.toByteArray(), Charset.forName("ISO-8859-1"));
+        int count = 0;
+        for (int i = response.indexOf(token); i != -1; i = response.indexOf(token, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
 }
@@ -16,6 +16,8 @@
 package org.atmosphere.vibe.platform.bridge.netty4;
 
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelHandlerContext;
@@ -34,10 +36,22 @@ import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
 import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.test.ServerWebSocketTest;
+import org.atmosphere.vibe.platform.websocket.PerMessageDeflate;
+import org.atmosphere.vibe.platform.websocket.PerMessageDeflateCodec;
 import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
 import org.junit.Test;
 
 public class NettyServerWebSocketTest extends ServerWebSocketTest {
@@ -70,10 +84,11 @@ public class NettyServerWebSocketTest extends ServerWebSocketTest {
                         return URI.create(req.getUri()).getPath().equals("/test");
                     }
                 }
+                .compression(new PerMessageDeflate().threshold(0))
                 .onwebsocket(performer.serverAction()));
             }
         });
-        channels.add(bootstrap.bind(port).channel());
+        channels.add(bootstrap.bind(port).syncUninterruptibly().channel());
     }
 
     @Override
@@ -97,4 +112,88 @@ public class NettyServerWebSocketTest extends ServerWebSocketTest {
         .connect();
     }
 
+    @Test
+    public void permessage_deflate() throws Exception {
+        final String text = "{\"type\":\"message\",\"data\":\"A Will Remains in the Ashes\"}";
+        final AtomicReference<PerMessageDeflateCodec> codec = new AtomicReference<>();
+        final AtomicReference<String> echo = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(3);
+        performer.onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(final ServerWebSocket ws) {
+                codec.set(ws.unwrap(PerMessageDeflateCodec.class));
+                ws.ontext(new Action<String>() {
+                    @Override
+                    public void on(String data) {
+                        ws.send(data);
+                    }
+                });
+            }
+        });
+        WebSocketClient client = new WebSocketClient();
+        // Jetty 9.2 doesn't install the extension by default
+        client.getExtensionFactory().register(PerMessageDeflate.NAME, PerMessageDeflateExtension.class);
+        client.start();
+        try {
+            ClientUpgradeRequest request = new ClientUpgradeRequest();
+            request.addExtensions(PerMessageDeflate.NAME);
+            Session session = client.connect(new WebSocketAdapter() {
+                @Override
+                public void onWebSocketText(String message) {
+                    echo.set(message);
+                    latch.countDown();
+                }
+            }, URI.create("ws://localhost:" + port + "/test"), request).get(5, TimeUnit.SECONDS);
+            assertThat(session.getUpgradeResponse().getExtensions().get(0).getName(), is(PerMessageDeflate.NAME));
+            // The second and third messages reuse the compression context
+            for (int i = 0; i < 3; i++) {
+                session.getRemote().sendString(text);
+            }
+            assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+        } finally {
+            client.stop();
+        }
+        assertThat(echo.get(), is(text));
+        assertThat(codec.get().receivedBytes(), is(3L * text.length()));
+        assertThat(codec.get().compressionRatio(), lessThan(1.0));
+    }
+
+    @Test
+    public void permessage_deflate_max_size() throws Exception {
+        final AtomicReference<PerMessageDeflateCodec> codec = new AtomicReference<>();
+        final AtomicInteger statusCode = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        performer.onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(final ServerWebSocket ws) {
+                codec.set(ws.unwrap(PerMessageDeflateCodec.class));
+                ws.setMaxMessageSize(1024);
+            }
+        });
+        WebSocketClient client = new WebSocketClient();
+        client.getExtensionFactory().register(PerMessageDeflate.NAME, PerMessageDeflateExtension.class);
+        client.start();
+        try {
+            ClientUpgradeRequest request = new ClientUpgradeRequest();
+            request.addExtensions(PerMessageDeflate.NAME);
+            Session session = client.connect(new WebSocketAdapter() {
+                @Override
+                public void onWebSocketClose(int code, String reason) {
+                    statusCode.set(code);
+                    latch.countDown();
+                }
+            }, URI.create("ws://localhost:" + port + "/test"), request).get(5, TimeUnit.SECONDS);
+            // 64KB compresses to less than the limit
+            char[] chars = new char[64 * 1024];
+            Arrays.fill(chars, 'a');
+            session.getRemote().sendStringByFuture(new String(chars));
+            assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+        } finally {
+            client.stop();
+        }
+        assertThat(statusCode.get(), is(1009));
+        // Inflation stops at the limit
+        assertThat(codec.get().receivedBytes(), is(0L));
+    }
+
 }
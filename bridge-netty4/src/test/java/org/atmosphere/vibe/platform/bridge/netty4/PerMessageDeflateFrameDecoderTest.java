@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.bridge.netty4;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+
+import org.junit.Test;
+
+public class PerMessageDeflateFrameDecoderTest {
+
+    private static final byte[] MASK = { 0x12, 0x34, 0x56, 0x78 };
+
+    @Test
+    public void unmask() {
+        for (int length : new int[] { 0, 1, 3, 4, 7, 8, 9, 15, 125, 126, 1000 }) {
+            EmbeddedChannel channel = new EmbeddedChannel(new PerMessageDeflateFrameDecoder(65536));
+            byte[] payload = new byte[length];
+            for (int i = 0; i < length; i++) {
+                payload[i] = (byte) i;
+            }
+            channel.writeInbound(frame(0x82, payload));
+            BinaryWebSocketFrame frame = (BinaryWebSocketFrame) channel.readInbound();
+            byte[] unmasked = new byte[frame.content().readableBytes()];
+            frame.content().readBytes(unmasked);
+            frame.release();
+            assertThat(unmasked, is(payload));
+            channel.finish();
+        }
+    }
+
+    @Test
+    public void negative_length() {
+        ByteBuf in = Unpooled.buffer();
+        in.writeByte(0x82).writeByte(0x80 | 127).writeLong(Long.MIN_VALUE + 5).writeBytes(MASK).writeBytes(new byte[5]);
+        assertProtocolError(in);
+    }
+
+    @Test
+    public void fragmented_control_frame() {
+        assertProtocolError(frame(0x09, new byte[1]));
+    }
+
+    @Test
+    public void long_control_frame() {
+        assertProtocolError(frame(0x89, new byte[126]));
+    }
+
+    private static void assertProtocolError(ByteBuf in) {
+        EmbeddedChannel channel = new EmbeddedChannel(new PerMessageDeflateFrameDecoder(65536));
+        channel.writeInbound(in);
+        assertThat(channel.readInbound(), nullValue());
+        Object out = channel.readOutbound();
+        assertThat(out, instanceOf(CloseWebSocketFrame.class));
+        assertThat(((CloseWebSocketFrame) out).statusCode(), is(1002));
+        ((CloseWebSocketFrame) out).release();
+        channel.finish();
+    }
+
+    private static ByteBuf frame(int b1, byte[] payload) {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeByte(b1);
+        if (payload.length < 126) {
+            frame.writeByte(0x80 | payload.length);
+        } else if (payload.length < 65536) {
+            frame.writeByte(0x80 | 126).writeShort(payload.length);
+        } else {
+            frame.writeByte(0x80 | 127).writeLong(payload.length);
+        }
+        frame.writeBytes(MASK);
+        for (int i = 0; i < payload.length; i++) {
+            frame.writeByte(payload[i] ^ MASK[i & 3]);
+        }
+        return frame;
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.bridge.netty4;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+
+import org.atmosphere.vibe.platform.action.Action;
+import org.atmosphere.vibe.platform.http.ServerHttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VibeNettyServerTest {
+
+    int port;
+    VibeNettyServer server;
+
+    @Before
+    public void before() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+    }
+
+    @After
+    public void after() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void start() throws IOException {
+        server = new VibeNettyServer().port(port).codec(echoCodec()).start();
+        assertThat(get("/test"), is("/test"));
+        assertThat(get("/test?a=b"), is("/test?a=b"));
+    }
+
+    @Test(timeout = 10000)
+    public void start_with_several_acceptors() throws IOException {
+        // Falls back to a single acceptor without the native transport
+        server = new VibeNettyServer().port(port).bossThreads(2).reusePort(true)
+        .writeBufferWaterMark(8 * 1024, 16 * 1024).codec(echoCodec()).start();
+        for (int i = 0; i < 10; i++) {
+            assertThat(get("/test"), is("/test"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void start_twice() {
+        server = new VibeNettyServer().port(port).start();
+        server.start();
+    }
+
+    private VibeServerCodec echoCodec() {
+        return new VibeServerCodec().onhttp(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                http.end(http.uri());
+            }
+        });
+    }
+
+    private String get(String uri) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + uri).openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int n; (n = in.read(buffer)) != -1;) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), "ISO-8859-1");
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.bridge.netty4;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+import java.nio.ByteBuffer;
+
+import org.atmosphere.vibe.platform.action.Action;
+import org.atmosphere.vibe.platform.http.ServerHttpExchange;
+import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
+import org.junit.Test;
+
+public class VibeServerCodecTest {
+
+    @Test
+    public void release_body() {
+        final StringBuilder body = new StringBuilder();
+        EmbeddedChannel channel = new EmbeddedChannel(new VibeServerCodec().onhttp(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                http.onchunk(new Action<ByteBuffer>() {
+                    @Override
+                    public void on(ByteBuffer data) {
+                        body.append(CharsetUtil.UTF_8.decode(data));
+                    }
+                })
+                .read();
+            }
+        }));
+        ByteBuf first = buffer("A Breath ");
+        ByteBuf last = buffer("Clad In Happiness");
+        channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/test"));
+        channel.writeInbound(new DefaultHttpContent(first));
+        channel.writeInbound(new DefaultLastHttpContent(last));
+        assertThat(body.toString(), is("A Breath Clad In Happiness"));
+        assertThat(first.refCnt(), is(0));
+        assertThat(last.refCnt(), is(0));
+        channel.finish();
+    }
+
+    @Test
+    public void release_body_without_exchange() {
+        EmbeddedChannel channel = new EmbeddedChannel(new VibeServerCodec());
+        ByteBuf content = buffer("orphan");
+        channel.writeInbound(new DefaultLastHttpContent(content));
+        assertThat(content.refCnt(), is(0));
+        channel.finish();
+    }
+
+    @Test
+    public void release_frames() {
+        final StringBuilder text = new StringBuilder();
+        EmbeddedChannel channel = new EmbeddedChannel(new HttpServerCodec(), new VibeServerCodec().onwebsocket(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                ws.ontext(new Action<String>() {
+                    @Override
+                    public void on(String data) {
+                        text.append(data);
+                    }
+                });
+            }
+        }));
+        FullHttpRequest req = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/test");
+        req.headers().set("host", "localhost").set("upgrade", "websocket").set("connection", "Upgrade")
+        .set("sec-websocket-key", "dGhlIHNhbXBsZSBub25jZQ==").set("sec-websocket-version", "13");
+        channel.writeInbound(req);
+        // The handshake response
+        ReferenceCountUtil.release(channel.readOutbound());
+        ByteBuf data = buffer("A road of winds the water builds");
+        channel.writeInbound(new TextWebSocketFrame(data));
+        assertThat(text.toString(), is("A road of winds the water builds"));
+        assertThat(data.refCnt(), is(0));
+        // The pong reuses the ping's payload until it's encoded
+        ByteBuf ping = buffer("ping");
+        channel.writeInbound(new PingWebSocketFrame(ping));
+        ReferenceCountUtil.release(channel.readOutbound());
+        assertThat(ping.refCnt(), is(0));
+        channel.finish();
+    }
+
+    private static ByteBuf buffer(String data) {
+        return Unpooled.copiedBuffer(data, CharsetUtil.UTF_8);
+    }
+
+}
@@ -17,20 +17,22 @@ package org.atmosphere.vibe.platform.bridge.play2;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.util.Map;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.http.AbstractServerHttpExchange;
+import org.atmosphere.vibe.platform.http.HttpHeaders;
 import org.atmosphere.vibe.platform.http.HttpStatus;
 import org.atmosphere.vibe.platform.http.ServerHttpExchange;
+import org.atmosphere.vibe.platform.http.SimpleHttpHeaders;
 
+import play.libs.F.Callback;
 import play.libs.F.Callback0;
 import play.libs.F.Function0;
 import play.libs.F.Promise;
+import play.libs.F.RedeemablePromise;
+import play.libs.HttpExecution;
 import play.mvc.Http.Request;
 import play.mvc.Http.Response;
 import play.mvc.Result;
@@ -48,7 +50,9 @@ public class PlayServerHttpExchange extends AbstractServerHttpExchange {
     private final Request request;
     private final Response response;
     private boolean aborted;
-    private CountDownLatch written = new CountDownLatch(1);
+    // Redeemed on the first call of write or end so that no thread waits for it
+    private final RedeemablePromise<Result> result = RedeemablePromise.empty();
+    private boolean written;
     private List<byte[]> buffer = new ArrayList<>();
     private HttpStatus status = HttpStatus.OK;
     private Chunks.Out<byte[]> out;
@@ -58,39 +62,42 @@ public class PlayServerHttpExchange extends AbstractServerHttpExchange {
         this.response = response;
     }
 
+    /**
+     * Returns the promise of the result to be returned by the action. It's
+     * redeemed when the response is written or ended for the first time.
+     */
     public Promise<Result> result() {
-        return Promise.promise(new Function0<Result>() {
+        return result;
+    }
+
+    // Because ServerHttpExchange is not thread-safe, it must be called within
+    // the lock of this exchange
+    private void redeem() {
+        if (written) {
+            return;
+        }
+        written = true;
+        result.success(Results.status(status.code(), new ByteChunks() {
             @Override
-            public Result apply() throws Throwable {
-                // Block the current thread until the first call of write or close
-                // Is there any other solution?
-                written.await();
-                // Because ServerHttpExchange is not thread-safe
+            public void onReady(Chunks.Out<byte[]> out) {
                 synchronized (PlayServerHttpExchange.this) {
-                    return Results.status(status.code(), new ByteChunks() {
+                    PlayServerHttpExchange.this.out = out;
+                    out.onDisconnected(new Callback0() {
                         @Override
-                        public void onReady(Chunks.Out<byte[]> out) {
-                            // With the same reason as above
-                            synchronized (PlayServerHttpExchange.this) {
-                                PlayServerHttpExchange.this.out = out;
-                                out.onDisconnected(new Callback0() {
-                                    @Override
-                                    public void invoke() throws Throwable {
-                                        closeActions.fire();
-                                    }
-                                });
-                                for (byte[] data : buffer) {
-                                    out.write(data);
-                                }
-                                if (aborted) {
-                                    out.close();
-                                }
-                            }
+                        public void invoke() throws Throwable {
+                            closeActions.fire();
                         }
                     });
+                    for (byte[] data : buffer) {
+                        out.write(data);
+                    }
+                    buffer = null;
+                    if (aborted) {
+                        out.close();
+                    }
                 }
             }
-        });
+        }));
     }
 
     @Override
@@ -104,39 +111,40 @@ public class PlayServerHttpExchange extends AbstractServerHttpExchange {
     }
 
     @Override
-    public Set<String> headerNames() {
-        return request.headers().keySet();
-    }
-
-    @Override
-    public List<String> headers(String name) {
-        for (String h : request.headers().keySet()) {
-            if (name.toLowerCase().equals(h.toLowerCase())) {
-                return Arrays.asList(request.headers().get(h));
+    protected HttpHeaders createHeaders() {
+        SimpleHttpHeaders headers = new SimpleHttpHeaders();
+        for (Map.Entry<String, String[]> entry : request.headers().entrySet()) {
+            for (String value : entry.getValue()) {
+                headers.add(entry.getKey(), value);
             }
         }
-        return Collections.<String> emptyList();
+        return headers;
     }
 
-    // Play can't read body asynchronously
+    // Play can't read body asynchronously but the body has already been
+    // buffered by the body parser so that it's dispatched on Play's default
+    // execution context instead of a new thread
     // TODO https://github.com/vibe-project/vibe-java-platform/issues/4
     @Override
     protected void doRead(final Action<ByteBuffer> chunkAction) {
-        // Using one of Play's thread pools may be a better way to go?
-        // https://www.playframework.com/documentation/2.3.x/ThreadPools
-        // TODO https://github.com/vibe-project/vibe-java-platform/issues/6
-        new Thread(new Runnable() {
+        Promise.promise(new Function0<Void>() {
             @Override
-            public void run() {
+            public Void apply() throws Throwable {
                 chunkAction.on(ByteBuffer.wrap(request.body().asRaw().asBytes()));
                 endActions.fire();
+                return null;
             }
-        })
-        .start();
+        }, HttpExecution.defaultContext())
+        .onFailure(new Callback<Throwable>() {
+            @Override
+            public void invoke(Throwable throwable) throws Throwable {
+                errorActions.fire(throwable);
+            }
+        }, HttpExecution.defaultContext());
     }
-    
+
     private void throwIfWritten() {
-        if (written.getCount() == 0) {
+        if (written) {
             errorActions.fire(new IllegalStateException("Response has already been written"));
         }
     }
@@ -158,22 +166,22 @@ public class PlayServerHttpExchange extends AbstractServerHttpExchange {
     }
 
     @Override
-    protected void doWrite(ByteBuffer byteBuffer) {
+    protected synchronized void doWrite(ByteBuffer byteBuffer) {
         byte[] bytes = new byte[byteBuffer.remaining()];
         byteBuffer.get(bytes);
         if (out == null) {
-            written.countDown();
             buffer.add(bytes);
+            redeem();
         } else {
             out.write(bytes);
         }
     }
 
     @Override
-    protected void doEnd() {
+    protected synchronized void doEnd() {
         if (out == null) {
-            written.countDown();
             aborted = true;
+            redeem();
         } else {
             out.close();
         }
@@ -32,6 +32,12 @@ import play.mvc.WebSocket.Out;
 
 /**
  * {@link ServerWebSocket} for Play 2.
+ * <p>
+ * Play's Java API fixes the type of frames per connection by the type of
+ * {@link WebSocket}. A connection of {@code WebSocket<String>} exchanges text
+ * frames only and one of {@code WebSocket<byte[]>}, created by
+ * {@link PlayServerWebSocket#ofBytes(Request, In, Out)}, exchanges binary
+ * frames only so that binary data needs no transcoding.
  *
  * @author Donghwan Kim
  */
@@ -39,17 +45,19 @@ public class PlayServerWebSocket extends AbstractServerWebSocket {
 
     private final Logger log = LoggerFactory.getLogger(PlayServerWebSocket.class);
     private final Request request;
-    private final WebSocket.Out<String> out;
+    // Only one of them is available
+    private final WebSocket.Out<String> textOut;
+    private final WebSocket.Out<byte[]> binaryOut;
 
+    /**
+     * Creates a WebSocket of text frames.
+     */
     public PlayServerWebSocket(Request request, In<String> in, Out<String> out) {
-        this.request = request;
-        this.out = out;
-        // TODO https://github.com/vibe-project/vibe-java-platform/issues/4
-        // Supports text frame only for now
+        this(request, out, null);
         in.onMessage(new Callback<String>() {
             @Override
             public void invoke(String message) throws Throwable {
-                textActions.fire(message);
+                handleText(message);
             }
         });
         in.onClose(new Callback0() {
@@ -59,12 +67,50 @@ public class PlayServerWebSocket extends AbstractServerWebSocket {
             }
         });
     }
-    
+
+    private PlayServerWebSocket(Request request, Out<String> textOut, Out<byte[]> binaryOut) {
+        this.request = request;
+        this.textOut = textOut;
+        this.binaryOut = binaryOut;
+    }
+
+    /**
+     * Creates a WebSocket of binary frames.
+     */
+    public static PlayServerWebSocket ofBytes(Request request, In<byte[]> in, Out<byte[]> out) {
+        final PlayServerWebSocket ws = new PlayServerWebSocket(request, null, out);
+        in.onMessage(new Callback<byte[]>() {
+            @Override
+            public void invoke(byte[] message) throws Throwable {
+                ws.handleBinaryFragment(ByteBuffer.wrap(message), true);
+            }
+        });
+        in.onClose(new Callback0() {
+            @Override
+            public void invoke() throws Throwable {
+                ws.closeActions.fire();
+            }
+        });
+        return ws;
+    }
+
+    @Override
+    public ServerWebSocket ontext(Action<String> action) {
+        if (textOut == null) {
+            log.error("WebSocket<byte[]> of Play Java API doesn't allow to receive text frame");
+            return this;
+        }
+        return super.ontext(action);
+    }
+
     @Override
     public ServerWebSocket onbinary(Action<ByteBuffer> action) {
-        // TODO https://github.com/vibe-project/vibe-java-platform/issues/4
-        log.error("Play Java API doesn't allow to receive text and binary frame together in a single connection");
-        return this;
+        if (binaryOut == null) {
+            // TODO https://github.com/vibe-project/vibe-java-platform/issues/4
+            log.error("WebSocket<String> of Play Java API doesn't allow to receive binary frame, use PlayServerWebSocket.ofBytes instead");
+            return this;
+        }
+        return super.onbinary(action);
     }
 
     @Override
@@ -74,19 +120,47 @@ public class PlayServerWebSocket extends AbstractServerWebSocket {
 
     @Override
     protected void doClose() {
-        out.close();
+        if (textOut != null) {
+            textOut.close();
+        } else {
+            binaryOut.close();
+        }
     }
 
     @Override
     protected void doSend(String data) {
-        out.write(data);
+        if (textOut == null) {
+            log.error("WebSocket<byte[]> of Play Java API doesn't allow to send text frame");
+            return;
+        }
+        textOut.write(data);
     }
 
     @Override
     protected void doSend(ByteBuffer byteBuffer) {
-        // Transformation from binary to text results in sending a text frame not binary frame
-        // TODO https://github.com/vibe-project/vibe-java-platform/issues/4
-        log.error("Play Java API doesn't allow to send text and binary frame together in a single connection");
+        if (binaryOut == null) {
+            // Transformation from binary to text results in sending a text frame not binary frame
+            // TODO https://github.com/vibe-project/vibe-java-platform/issues/4
+            log.error("WebSocket<String> of Play Java API doesn't allow to send binary frame, use PlayServerWebSocket.ofBytes instead");
+            return;
+        }
+        byte[] bytes;
+        if (byteBuffer.hasArray() && byteBuffer.arrayOffset() == 0 && byteBuffer.position() == 0
+            && byteBuffer.remaining() == byteBuffer.array().length) {
+            // Avoids a copy when the buffer wraps a whole array
+            bytes = byteBuffer.array();
+            byteBuffer.position(byteBuffer.limit());
+        } else {
+            bytes = new byte[byteBuffer.remaining()];
+            byteBuffer.get(bytes);
+        }
+        binaryOut.write(bytes);
+    }
+
+    @Override
+    protected void doPing(ByteBuffer data) {
+        // WebSocket.Out of Play Java API can't write control frames
+        throw new UnsupportedOperationException("Play 2 doesn't support sending a ping");
     }
 
     /**
@@ -97,7 +171,7 @@ public class PlayServerWebSocket extends AbstractServerWebSocket {
         return Request.class.isAssignableFrom(clazz) ?
                 clazz.cast(request) :
                 Out.class.isAssignableFrom(clazz) ?
-                        clazz.cast(out) :
+                        clazz.cast(textOut != null ? textOut : binaryOut) :
                         null;
     }
 
@@ -18,11 +18,9 @@ package org.atmosphere.vibe.platform.bridge.servlet3;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.Collections;
 import java.util.Enumeration;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.AsyncEvent;
@@ -34,9 +32,12 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.action.Actions;
+import org.atmosphere.vibe.platform.action.BoundedExecutor;
 import org.atmosphere.vibe.platform.http.AbstractServerHttpExchange;
+import org.atmosphere.vibe.platform.http.HttpHeaders;
 import org.atmosphere.vibe.platform.http.HttpStatus;
 import org.atmosphere.vibe.platform.http.ServerHttpExchange;
+import org.atmosphere.vibe.platform.http.SimpleHttpHeaders;
 
 /**
  * {@link ServerHttpExchange} for Servlet 3.
@@ -47,10 +48,21 @@ public class ServletServerHttpExchange extends AbstractServerHttpExchange {
 
     private final HttpServletRequest request;
     private final HttpServletResponse response;
+    private final Executor bodyReaderExecutor;
+    private String uri;
 
     public ServletServerHttpExchange(HttpServletRequest request, HttpServletResponse response) {
+        this(request, response, BoundedExecutor.shared());
+    }
+
+    /**
+     * Creates an exchange reading the request body with the given executor
+     * if the container doesn't support non-blocking I/O of Servlet 3.1.
+     */
+    public ServletServerHttpExchange(HttpServletRequest request, HttpServletResponse response, Executor bodyReaderExecutor) {
         this.request = request;
         this.response = response;
+        this.bodyReaderExecutor = bodyReaderExecutor;
         AsyncContext async = request.startAsync();
         async.setTimeout(0);
         async.addListener(new AsyncListener() {
@@ -74,9 +86,11 @@ public class ServletServerHttpExchange extends AbstractServerHttpExchange {
 
     @Override
     public String uri() {
-        String uri = request.getRequestURI();
-        if (request.getQueryString() != null) {
-            uri += "?" + request.getQueryString();
+        if (uri == null) {
+            uri = request.getRequestURI();
+            if (request.getQueryString() != null) {
+                uri += "?" + request.getQueryString();
+            }
         }
         return uri;
     }
@@ -87,18 +101,17 @@ public class ServletServerHttpExchange extends AbstractServerHttpExchange {
     }
 
     @Override
-    public Set<String> headerNames() {
-        Set<String> headerNames = new LinkedHashSet<>();
-        Enumeration<String> enumeration = request.getHeaderNames();
-        while (enumeration.hasMoreElements()) {
-            headerNames.add(enumeration.nextElement());
+    protected HttpHeaders createHeaders() {
+        SimpleHttpHeaders headers = new SimpleHttpHeaders();
+        Enumeration<String> names = request.getHeaderNames();
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            Enumeration<String> values = request.getHeaders(name);
+            while (values.hasMoreElements()) {
+                headers.add(name, values.nextElement());
+            }
         }
-        return headerNames;
-    }
-
-    @Override
-    public List<String> headers(String name) {
-        return Collections.list(request.getHeaders(name));
+        return headers;
     }
     
     @Override
@@ -108,10 +121,10 @@ public class ServletServerHttpExchange extends AbstractServerHttpExchange {
             int version = getServletMinorVersion();
             if (version > 0) {
                 // 3.1+ asynchronous
-                new AsyncBodyReader(input, chunkAction, endActions, errorActions);
+                new AsyncBodyReader(input, chunkAction, endActions, errorActions).start();
             } else {
                 // 3.0 synchronous
-                new SyncBodyReader(input, chunkAction, endActions, errorActions);
+                new SyncBodyReader(input, chunkAction, endActions, errorActions, bodyReaderExecutor).start();
             }
         } catch (IOException e) {
             errorActions.fire(e);
@@ -142,7 +155,6 @@ public class ServletServerHttpExchange extends AbstractServerHttpExchange {
             this.chunkAction = chunkAction;
             this.endActions = endActions;
             this.errorActions = errorActions;
-            start();
         }
 
         abstract void start();
@@ -194,24 +206,34 @@ public class ServletServerHttpExchange extends AbstractServerHttpExchange {
     }
 
     private static class SyncBodyReader extends BodyReader {
-        public SyncBodyReader(ServletInputStream input, Action<ByteBuffer> action, Actions<Void> endActions, Actions<Throwable> errorActions) {
+        final Executor executor;
+
+        public SyncBodyReader(ServletInputStream input, Action<ByteBuffer> action, Actions<Void> endActions, Actions<Throwable> errorActions, Executor executor) {
             super(input, action, endActions, errorActions);
+            this.executor = executor;
         }
 
         @Override
         void start() {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        read();
-                        end();
-                    } catch (IOException e) {
-                        errorActions.fire(e);
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        readAll();
                     }
-                }
-            })
-            .start();
+                });
+            } catch (RejectedExecutionException e) {
+                errorActions.fire(e);
+            }
+        }
+
+        void readAll() {
+            try {
+                read();
+                end();
+            } catch (IOException e) {
+                errorActions.fire(e);
+            }
         }
 
         @Override
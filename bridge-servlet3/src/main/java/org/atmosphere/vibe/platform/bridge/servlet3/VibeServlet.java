@@ -15,12 +15,15 @@
  */
 package org.atmosphere.vibe.platform.bridge.servlet3;
 
+import java.util.concurrent.Executor;
+
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.action.Actions;
+import org.atmosphere.vibe.platform.action.BoundedExecutor;
 import org.atmosphere.vibe.platform.action.ConcurrentActions;
 import org.atmosphere.vibe.platform.http.ServerHttpExchange;
 
@@ -44,10 +47,11 @@ import org.atmosphere.vibe.platform.http.ServerHttpExchange;
 public class VibeServlet extends HttpServlet {
 
     private Actions<ServerHttpExchange> httpActions = new ConcurrentActions<>();
+    private Executor bodyReaderExecutor = BoundedExecutor.shared();
 
     @Override
     protected void service(HttpServletRequest req, HttpServletResponse resp) {
-        httpActions.fire(new ServletServerHttpExchange(req, resp));
+        httpActions.fire(new ServletServerHttpExchange(req, resp, bodyReaderExecutor));
     }
 
     /**
@@ -58,4 +62,14 @@ public class VibeServlet extends HttpServlet {
         httpActions.add(action);
         return this;
     }
+
+    /**
+     * Sets the executor to read request bodies on Servlet 3.0 containers
+     * which don't support non-blocking I/O. By default, the shared
+     * {@link BoundedExecutor} is used.
+     */
+    public VibeServlet bodyReaderExecutor(Executor executor) {
+        this.bodyReaderExecutor = executor;
+        return this;
+    }
 }
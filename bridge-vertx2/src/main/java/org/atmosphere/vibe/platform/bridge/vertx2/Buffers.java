@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.bridge.vertx2;
+
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+
+import org.vertx.java.core.buffer.Buffer;
+
+// Shared by the HTTP exchange and the WebSocket
+final class Buffers {
+
+    private Buffers() {
+    }
+
+    // Wraps the buffer instead of copying it whether it's heap or direct.
+    // Vert.x marks the wrapped buffer unreleasable so it shouldn't be pooled.
+    static Buffer wrap(ByteBuffer byteBuffer) {
+        Buffer buffer = new Buffer(Unpooled.wrappedBuffer(byteBuffer));
+        byteBuffer.position(byteBuffer.limit());
+        return buffer;
+    }
+
+}
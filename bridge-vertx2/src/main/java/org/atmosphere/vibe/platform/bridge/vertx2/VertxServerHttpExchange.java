@@ -16,11 +16,14 @@
 package org.atmosphere.vibe.platform.bridge.vertx2;
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.http.AbstractServerHttpExchange;
+import org.atmosphere.vibe.platform.http.HttpHeaders;
 import org.atmosphere.vibe.platform.http.HttpStatus;
 import org.atmosphere.vibe.platform.http.ServerHttpExchange;
 import org.vertx.java.core.Handler;
@@ -59,8 +62,7 @@ public class VertxServerHttpExchange extends AbstractServerHttpExchange {
             protected void handle() {
                 closeActions.fire();
             }
-        })
-        .setChunked(true);
+        });
     }
 
     @Override
@@ -74,13 +76,31 @@ public class VertxServerHttpExchange extends AbstractServerHttpExchange {
     }
 
     @Override
-    public Set<String> headerNames() {
-        return request.headers().names();
-    }
+    protected HttpHeaders createHeaders() {
+        // Vert.x's MultiMap is case-insensitive already
+        return new HttpHeaders() {
+            Set<String> names;
 
-    @Override
-    public List<String> headers(String name) {
-        return request.headers().getAll(name);
+            @Override
+            public Set<String> names() {
+                if (names == null) {
+                    Set<String> set = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+                    set.addAll(request.headers().names());
+                    names = Collections.unmodifiableSet(set);
+                }
+                return names;
+            }
+
+            @Override
+            public String get(String name) {
+                return request.headers().get(name);
+            }
+
+            @Override
+            public List<String> getAll(String name) {
+                return request.headers().getAll(name);
+            }
+        };
     }
     
     @Override
@@ -111,7 +131,11 @@ public class VertxServerHttpExchange extends AbstractServerHttpExchange {
 
     @Override
     protected void doWrite(ByteBuffer byteBuffer) {
-        response.write(new Buffer().setBytes(0, byteBuffer));
+        // The response is chunked only if it's written in several pieces
+        if (!response.isChunked()) {
+            response.setChunked(true);
+        }
+        response.write(Buffers.wrap(byteBuffer));
     }
 
     @Override
@@ -119,6 +143,12 @@ public class VertxServerHttpExchange extends AbstractServerHttpExchange {
         response.end();
     }
 
+    @Override
+    protected void doEnd(ByteBuffer byteBuffer) {
+        // Vert.x sets content-length for a response not chunked
+        response.end(Buffers.wrap(byteBuffer));
+    }
+
     /**
      * {@link HttpServerRequest} is available.
      */
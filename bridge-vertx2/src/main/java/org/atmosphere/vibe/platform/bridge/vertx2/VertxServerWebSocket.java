@@ -21,18 +21,27 @@ import org.atmosphere.vibe.platform.websocket.AbstractServerWebSocket;
 import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.VoidHandler;
-import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.http.WebSocketFrame;
 import org.vertx.java.core.http.impl.ws.WebSocketFrameInternal;
 
 /**
  * {@link ServerWebSocket} for Vert.x 2.
+ * <p>
+ * Vert.x 2 answers pings by itself but discards pongs before they reach the
+ * frame handler, so {@link ServerWebSocket#onpong(org.atmosphere.vibe.platform.action.Action)}
+ * is never fired. Sending a ping is not supported either. Vert.x 2 closes the
+ * connection without a status code, so close codes such as {@code 1009} for a
+ * message over {@link ServerWebSocket#setMaxMessageSize(long)} are not sent.
+ * The encoder marks every frame as final, so fragments to send are buffered
+ * and sent as a whole message.
  *
  * @author Donghwan Kim
  */
 public class VertxServerWebSocket extends AbstractServerWebSocket {
 
     private final org.vertx.java.core.http.ServerWebSocket socket;
+    // The type of the message being received in fragments
+    private boolean fragmentedText;
 
     public VertxServerWebSocket(org.vertx.java.core.http.ServerWebSocket socket) {
         this.socket = socket;
@@ -55,10 +64,23 @@ public class VertxServerWebSocket extends AbstractServerWebSocket {
                 WebSocketFrameInternal frame = (WebSocketFrameInternal) f;
                 switch (frame.type()) {
                 case TEXT:
-                    textActions.fire(frame.textData());
+                    if (frame.isFinalFrame()) {
+                        handleText(frame.textData());
+                    } else {
+                        fragmentedText = true;
+                        handleTextFragment(frame.getBinaryData().nioBuffer(), false);
+                    }
                     break;
                 case BINARY:
-                    binaryActions.fire(frame.getBinaryData().nioBuffer());
+                    fragmentedText = false;
+                    handleBinaryFragment(frame.getBinaryData().nioBuffer(), frame.isFinalFrame());
+                    break;
+                case CONTINUATION:
+                    if (fragmentedText) {
+                        handleTextFragment(frame.getBinaryData().nioBuffer(), frame.isFinalFrame());
+                    } else {
+                        handleBinaryFragment(frame.getBinaryData().nioBuffer(), frame.isFinalFrame());
+                    }
                     break;
                 default:
                     break;
@@ -72,6 +94,12 @@ public class VertxServerWebSocket extends AbstractServerWebSocket {
         return socket.uri();
     }
 
+    @Override
+    protected void doPing(ByteBuffer data) {
+        // Vert.x 2 doesn't expose a way to write a ping
+        throw new UnsupportedOperationException("Vert.x 2 doesn't support sending a ping");
+    }
+
     @Override
     protected void doClose() {
         socket.close();
@@ -84,7 +112,7 @@ public class VertxServerWebSocket extends AbstractServerWebSocket {
 
     @Override
     protected void doSend(ByteBuffer byteBuffer) {
-        socket.writeBinaryFrame(new Buffer().setBytes(0, byteBuffer));
+        socket.writeBinaryFrame(Buffers.wrap(byteBuffer));
     }
 
     /**
@@ -16,11 +16,14 @@
 package org.atmosphere.vibe.platform.bridge.vertx2;
 
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.http.ServerHttpExchange;
 import org.atmosphere.vibe.platform.test.ServerHttpExchangeTest;
+import org.eclipse.jetty.client.api.Response;
 import org.junit.Test;
 import org.vertx.java.core.VertxFactory;
 import org.vertx.java.core.http.HttpServer;
@@ -57,4 +60,23 @@ public class VertxServerHttpExchangeTest extends ServerHttpExchangeTest {
         .send();
     }
 
+    @Test
+    public void end_with_content_length() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                http.end("Hello");
+            }
+        })
+        .responseListener(new Response.Listener.Adapter() {
+            @Override
+            public void onSuccess(Response response) {
+                assertThat(response.getHeaders().get("content-length"), is("5"));
+                assertThat(response.getHeaders().get("transfer-encoding"), nullValue());
+                performer.start();
+            }
+        })
+        .send();
+    }
+
 }
@@ -16,11 +16,17 @@
 package org.atmosphere.vibe.platform.bridge.vertx2;
 
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.nio.ByteBuffer;
+
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.test.ServerWebSocketTest;
 import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.VertxFactory;
@@ -63,4 +69,70 @@ public class VertxServerWebSocketTest extends ServerWebSocketTest {
         .connect();
     }
 
+    // Vert.x 2 discards pong frames and can't send a ping
+    @Override
+    @Test
+    @Ignore
+    public void ping_pong() {}
+
+    @Override
+    @Test
+    @Ignore
+    public void setIdleTimeout() {}
+
+    // Vert.x 2 closes the connection without a status code
+    @Override
+    @Test
+    public void setMaxMessageSize_text() {
+        performer.clientListener(new WebSocketAdapter() {
+            @Override
+            public void onWebSocketConnect(Session sess) {
+                sess.getRemote().sendStringByFuture("A road of winds the water builds");
+            }
+            @Override
+            public void onWebSocketClose(int statusCode, String reason) {
+                performer.start();
+            }
+        })
+        .onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                ws.setMaxMessageSize(8).ontext(new Action<String>() {
+                    @Override
+                    public void on(String data) {
+                        assertThat(true, is(false));
+                    }
+                });
+            }
+        })
+        .connect();
+    }
+
+    @Override
+    @Test
+    public void setMaxMessageSize_binary() {
+        performer.clientListener(new WebSocketAdapter() {
+            @Override
+            public void onWebSocketConnect(Session sess) {
+                sess.getRemote().sendBytesByFuture(ByteBuffer.wrap(new byte[] { 0x00, 0x01, 0x02, 0x03 }));
+            }
+            @Override
+            public void onWebSocketClose(int statusCode, String reason) {
+                performer.start();
+            }
+        })
+        .onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                ws.setMaxMessageSize(2).onbinary(new Action<ByteBuffer>() {
+                    @Override
+                    public void on(ByteBuffer data) {
+                        assertThat(true, is(false));
+                    }
+                });
+            }
+        })
+        .connect();
+    }
+
 }
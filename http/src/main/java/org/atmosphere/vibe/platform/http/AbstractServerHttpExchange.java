@@ -16,13 +16,23 @@
 package org.atmosphere.vibe.platform.http;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipException;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.action.Actions;
+import org.atmosphere.vibe.platform.action.PlatformMetrics;
 import org.atmosphere.vibe.platform.action.SimpleActions;
 import org.atmosphere.vibe.platform.action.VoidAction;
 import org.slf4j.Logger;
@@ -43,42 +53,225 @@ public abstract class AbstractServerHttpExchange implements ServerHttpExchange {
     private final Actions<Object> chunkActions = new SimpleActions<>();
     private final Actions<Object> bodyActions = new SimpleActions<>(new Actions.Options().once(true).memory(true));
     private final Actions<Void> finishActions = new SimpleActions<>(new Actions.Options().once(true).memory(true));
+    private final PlatformMetrics metrics = PlatformMetrics.current();
+    private final long startTime = System.nanoTime();
+    private boolean firstByteSent;
+    private boolean finished;
+    private HttpHeaders headers;
+    private String path;
+    private Map<String, List<String>> params;
+    private boolean contentTypeParsed;
+    private String mediaType;
+    private String charset;
     private boolean read;
     private boolean readBody;
+    private boolean written;
     private boolean ended;
     private String writeCharsetName = "ISO-8859-1";
+    private HttpCompression compression;
+    private String contentEncoding;
+    private String contentType;
+    private String vary;
+    private boolean identity;
+    private ContentEncoder encoder;
+    private long maxDecompressedSize = 16 * 1024 * 1024;
+    private ContentDecoder decoder;
+    private boolean decodingFailed;
 
     public AbstractServerHttpExchange() {
+        metrics.exchangeStarted();
         endActions.add(new VoidAction() {
             @Override
             public void on() {
                 logger.trace("{}'s request has ended", AbstractServerHttpExchange.this);
+                if (decoder != null) {
+                    if (!decoder.finished() && !decodingFailed) {
+                        failDecoding(new ZipException("Unexpected end of the compressed request body"));
+                    }
+                    decoder.close();
+                }
             }
         });
         finishActions.add(new VoidAction() {
             @Override
             public void on() {
                 logger.trace("{}'s response has ended", AbstractServerHttpExchange.this);
+                finish();
             }
         });
         errorActions.add(new Action<Throwable>() {
             @Override
             public void on(Throwable throwable) {
                 logger.trace("{} has received a throwable {}", AbstractServerHttpExchange.this, throwable);
+                metrics.exchangeError();
             }
         });
         closeActions.add(new VoidAction() {
             @Override
             public void on() {
                 logger.trace("{} has been closed", AbstractServerHttpExchange.this);
+                finish();
+                if (encoder != null) {
+                    encoder.close();
+                }
+                if (decoder != null) {
+                    decoder.close();
+                }
             }
         });
     }
 
+    // Either the response ends or the connection is closed first
+    private synchronized void finish() {
+        if (!finished) {
+            finished = true;
+            metrics.exchangeFinished(System.nanoTime() - startTime);
+        }
+    }
+
+    private void firstByte() {
+        if (!firstByteSent) {
+            firstByteSent = true;
+            metrics.exchangeFirstByte(System.nanoTime() - startTime);
+        }
+    }
+
+    @Override
+    public HttpHeaders headers() {
+        if (headers == null) {
+            headers = createHeaders();
+        }
+        return headers;
+    }
+
+    /**
+     * Creates the view of the request headers. It's called once when the
+     * headers are accessed for the first time.
+     */
+    protected abstract HttpHeaders createHeaders();
+
+    @Override
+    public String path() {
+        if (path == null) {
+            path = HttpUri.path(uri());
+        }
+        return path;
+    }
+
+    @Override
+    public Map<String, List<String>> params() {
+        if (params == null) {
+            String uri = uri();
+            int start = uri.indexOf('?');
+            params = start == -1 ? Collections.<String, List<String>> emptyMap() : parseQuery(uri.substring(start + 1));
+        }
+        return params;
+    }
+
+    private static Map<String, List<String>> parseQuery(String query) {
+        Map<String, List<String>> params = new LinkedHashMap<>();
+        int start = 0;
+        while (start <= query.length()) {
+            int end = query.indexOf('&', start);
+            if (end == -1) {
+                end = query.length();
+            }
+            if (end > start) {
+                int eq = query.indexOf('=', start);
+                String name;
+                String value;
+                if (eq == -1 || eq > end) {
+                    name = decode(query.substring(start, end));
+                    value = "";
+                } else {
+                    name = decode(query.substring(start, eq));
+                    value = decode(query.substring(eq + 1, end));
+                }
+                List<String> values = params.get(name);
+                if (values == null) {
+                    values = new ArrayList<>(1);
+                    params.put(name, values);
+                }
+                values.add(value);
+            }
+            start = end + 1;
+        }
+        for (Map.Entry<String, List<String>> entry : params.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return Collections.unmodifiableMap(params);
+    }
+
+    private static String decode(String string) {
+        if (string.indexOf('%') == -1 && string.indexOf('+') == -1) {
+            return string;
+        }
+        try {
+            return URLDecoder.decode(string, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            // Malformed percent-encoding is kept as it is
+            return string;
+        }
+    }
+
+    @Override
+    public String param(String name) {
+        List<String> values = params().get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    @Override
+    public String mediaType() {
+        parseContentType();
+        return mediaType;
+    }
+
+    @Override
+    public String charset() {
+        parseContentType();
+        return charset;
+    }
+
+    private void parseContentType() {
+        if (!contentTypeParsed) {
+            contentTypeParsed = true;
+            String contentType = header("content-type");
+            if (contentType != null) {
+                int semicolon = contentType.indexOf(';');
+                mediaType = (semicolon == -1 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase();
+                charset = findCharset(contentType);
+            }
+        }
+    }
+
+    // Returns the value of charset parameter of the given content-type
+    private static String findCharset(String contentType) {
+        for (String param : contentType.split(";")) {
+            int eq = param.indexOf('=');
+            if (eq != -1 && param.substring(0, eq).trim().equalsIgnoreCase("charset")) {
+                String value = param.substring(eq + 1).trim();
+                if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value.isEmpty() ? null : value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Set<String> headerNames() {
+        return headers().names();
+    }
+
     @Override
     public String header(String name) {
-        List<String> headers = headers(name);
-        return headers != null && headers.size() > 0 ? headers.get(0) : null;
+        return headers().get(name);
+    }
+
+    @Override
+    public List<String> headers(String name) {
+        return headers().getAll(name);
     }
     
     @Override
@@ -95,26 +288,19 @@ public abstract class AbstractServerHttpExchange implements ServerHttpExchange {
     
     private boolean hasTextBody() {
         // See http://www.w3.org/Protocols/rfc2616/rfc2616-sec7.html#sec7.2.1
-        String contentType = header("content-type");
-        return contentType != null && contentType.startsWith("text/");
+        String mediaType = mediaType();
+        return mediaType != null && mediaType.startsWith("text/");
     }
     
     @Override
     public ServerHttpExchange readAsText() {
-        return readAsText(findCharsetName(header("content-type")));
+        return readAsText(charsetOrDefault(charset()));
     }
 
-    private String findCharsetName(String contentType) {
+    private static String charsetOrDefault(String charsetName) {
         // HTTP 1.1 says that the default charset is ISO-8859-1
         // http://www.w3.org/International/O-HTTP-charset#charset
-        String charsetName = "ISO-8859-1";
-        if (contentType != null) {
-            int idx = contentType.indexOf("charset=");
-            if (idx != -1) {
-                charsetName = contentType.substring(idx + "charset=".length());
-            }
-        }
-        return charsetName;
+        return charsetName != null ? charsetName : "ISO-8859-1";
     }
 
     @Override
@@ -122,12 +308,12 @@ public abstract class AbstractServerHttpExchange implements ServerHttpExchange {
         if (!read) {
             read = true;
             final Charset charset = Charset.forName(charsetName);
-            doRead(new Action<ByteBuffer>() {
+            doRead(decoding(new Action<ByteBuffer>() {
                 @Override
                 public void on(ByteBuffer byteBuffer) {
                     chunkActions.fire(charset.decode(byteBuffer).toString());
                 }
-            });
+            }));
         }
         return this;
     }
@@ -136,13 +322,61 @@ public abstract class AbstractServerHttpExchange implements ServerHttpExchange {
     public ServerHttpExchange readAsBinary() {
         if (!read) {
             read = true;
-            doRead(new Action<ByteBuffer>() {
+            doRead(decoding(new Action<ByteBuffer>() {
                 @Override
                 public void on(ByteBuffer byteBuffer) {
                     chunkActions.fire(byteBuffer);
                 }
-            });
+            }));
+        }
+        return this;
+    }
+
+    // Inserts a stage to decompress the body if it's encoded by gzip or deflate
+    private Action<ByteBuffer> decoding(final Action<ByteBuffer> chunkAction) {
+        String contentEncoding = header("content-encoding");
+        if (contentEncoding == null || !ContentDecoder.supports(contentEncoding.trim().toLowerCase())) {
+            return counting(chunkAction);
+        }
+        decoder = new ContentDecoder(contentEncoding.trim().toLowerCase(), maxDecompressedSize);
+        return counting(new Action<ByteBuffer>() {
+            @Override
+            public void on(ByteBuffer byteBuffer) {
+                if (decodingFailed) {
+                    return;
+                }
+                try {
+                    decoder.decode(byteBuffer, chunkAction);
+                } catch (IOException e) {
+                    failDecoding(e);
+                }
+            }
+        });
+    }
+
+    private Action<ByteBuffer> counting(final Action<ByteBuffer> chunkAction) {
+        if (!metrics.enabled()) {
+            return chunkAction;
         }
+        return new Action<ByteBuffer>() {
+            @Override
+            public void on(ByteBuffer byteBuffer) {
+                metrics.bytesRead(byteBuffer.remaining());
+                chunkAction.on(byteBuffer);
+            }
+        };
+    }
+
+    private void failDecoding(IOException e) {
+        logger.trace("{} fails to decompress the request body {}", this, e);
+        decodingFailed = true;
+        decoder.close();
+        errorActions.fire(e);
+    }
+
+    @Override
+    public ServerHttpExchange setMaxDecompressedSize(long maxSize) {
+        this.maxDecompressedSize = maxSize;
         return this;
     }
 
@@ -177,7 +411,9 @@ public abstract class AbstractServerHttpExchange implements ServerHttpExchange {
                 endActions.add(new VoidAction() {
                     @Override
                     public void on() {
-                        bodyActions.fire(body.toString());
+                        if (!decodingFailed) {
+                            bodyActions.fire(body.toString());
+                        }
                     }
                 });
             } else {
@@ -194,7 +430,9 @@ public abstract class AbstractServerHttpExchange implements ServerHttpExchange {
                 endActions.add(new VoidAction() {
                     @Override
                     public void on() {
-                        bodyActions.fire(ByteBuffer.wrap(body.toByteArray()));
+                        if (!decodingFailed) {
+                            bodyActions.fire(ByteBuffer.wrap(body.toByteArray()));
+                        }
                     }
                 });
             }
@@ -228,12 +466,55 @@ public abstract class AbstractServerHttpExchange implements ServerHttpExchange {
         logger.trace("{} sets a response header {} to {}", this, name, value);
         // Intercepts content-type header to find charset
         if (name.equalsIgnoreCase("content-type")) {
-            writeCharsetName = findCharsetName(value);
+            writeCharsetName = charsetOrDefault(findCharset(value));
+            contentType = value;
+        } else if (name.equalsIgnoreCase("vary")) {
+            // Kept to add accept-encoding to it
+            vary = value;
+        } else if (name.equalsIgnoreCase("content-encoding") || name.equalsIgnoreCase("content-length")) {
+            // The body is already encoded or its length is fixed
+            identity = true;
         }
         doSetHeader(name, value);
         return this;
     }
 
+    @Override
+    public ServerHttpExchange setCompression(HttpCompression compression) {
+        if (!written && !ended) {
+            this.compression = compression;
+            this.contentEncoding = compression.negotiate(header("accept-encoding"));
+            logger.trace("{} negotiates response compression, {}", this, contentEncoding);
+        }
+        return this;
+    }
+
+    // Decides whether to compress the response when the first data is about
+    // to be written. The length is given only if it's the whole body
+    private boolean startEncoding(int length) {
+        if (!written && contentEncoding != null && !identity && compression.compressible(contentType) && 
+            (length == -1 || length >= compression.threshold())) {
+            encoder = new ContentEncoder(contentEncoding, compression.compressionLevel());
+            doSetHeader("content-encoding", contentEncoding);
+            doSetHeader("vary", vary(vary));
+        }
+        return encoder != null;
+    }
+
+    // Adds accept-encoding to the vary header the application may have set
+    private static String vary(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return "accept-encoding";
+        }
+        for (String field : value.split(",")) {
+            String name = field.trim();
+            if (name.equals("*") || name.equalsIgnoreCase("accept-encoding")) {
+                return value;
+            }
+        }
+        return value + ", accept-encoding";
+    }
+
     protected abstract void doSetHeader(String name, String value);
 
     @Override
@@ -244,17 +525,37 @@ public abstract class AbstractServerHttpExchange implements ServerHttpExchange {
     @Override
     public ServerHttpExchange write(String data, String charsetName) {
         logger.trace("{} sends a text chunk {} with charset {}", this, data, charsetName);
-        doWrite(Charset.forName(charsetName).encode(data));
+        writeChunk(Charset.forName(charsetName).encode(data));
         return this;
     }
 
     @Override
     public ServerHttpExchange write(ByteBuffer byteBuffer) {
         logger.trace("{} sends a binary chunk {}", this, byteBuffer);
-        doWrite(byteBuffer);
+        writeChunk(byteBuffer);
         return this;
     }
 
+    private void writeChunk(ByteBuffer byteBuffer) {
+        if (startEncoding(-1)) {
+            ByteBuffer compressed = encoder.encode(byteBuffer, false);
+            written = true;
+            if (compressed.hasRemaining()) {
+                send(compressed);
+            }
+        } else {
+            written = true;
+            send(byteBuffer);
+        }
+    }
+
+    // Hands a chunk over to the platform
+    private void send(ByteBuffer byteBuffer) {
+        firstByte();
+        metrics.bytesWritten(byteBuffer.remaining());
+        doWrite(byteBuffer);
+    }
+
     protected abstract void doWrite(ByteBuffer byteBuffer);
 
     @Override
@@ -262,6 +563,14 @@ public abstract class AbstractServerHttpExchange implements ServerHttpExchange {
         logger.trace("{} ends the response", this);
         if (!ended) {
             ended = true;
+            if (encoder != null) {
+                // Completes the compressed stream
+                ByteBuffer trailer = encoder.encode(ByteBuffer.allocate(0), true);
+                if (trailer.hasRemaining()) {
+                    send(trailer);
+                }
+            }
+            firstByte();
             doEnd();
             finishActions.fire();
         }
@@ -272,17 +581,47 @@ public abstract class AbstractServerHttpExchange implements ServerHttpExchange {
 
     @Override
     public ServerHttpExchange end(String data) {
-        return write(data).end();
+        return end(data, writeCharsetName);
     }
 
     @Override
     public ServerHttpExchange end(String data, String charsetName) {
-        return write(data, charsetName).end();
+        if (written || ended) {
+            return write(data, charsetName).end();
+        }
+        logger.trace("{} ends the response with a text body {} with charset {}", this, data, charsetName);
+        return endWith(Charset.forName(charsetName).encode(data));
     }
 
     @Override
     public ServerHttpExchange end(ByteBuffer data) {
-        return write(data).end();
+        if (written || ended) {
+            return write(data).end();
+        }
+        logger.trace("{} ends the response with a binary body {}", this, data);
+        return endWith(data);
+    }
+
+    private ServerHttpExchange endWith(ByteBuffer byteBuffer) {
+        ended = true;
+        ByteBuffer body = startEncoding(byteBuffer.remaining()) ? encoder.encode(byteBuffer, true) : byteBuffer;
+        firstByte();
+        metrics.bytesWritten(body.remaining());
+        doEnd(body);
+        finishActions.fire();
+        return this;
+    }
+
+    /**
+     * Writes the given data as the whole response body and completes the
+     * response. It's called instead of {@link #doWrite(ByteBuffer)} and
+     * {@link #doEnd()} when the response ends with data before anything has
+     * been written so that the platform can send the body with
+     * {@code content-length} at once. By default, it delegates to them.
+     */
+    protected void doEnd(ByteBuffer byteBuffer) {
+        doWrite(byteBuffer);
+        doEnd();
     }
     
     @Override
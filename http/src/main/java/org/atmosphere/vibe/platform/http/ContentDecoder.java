@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.atmosphere.vibe.platform.action.Action;
+
+/**
+ * Decompresses a request body encoded with {@code gzip} or {@code deflate}
+ * chunk by chunk. Decompressed data is passed to the given action as soon as
+ * it's available and its total size is limited to protect against
+ * decompression bombs.
+ */
+class ContentDecoder {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    // Input is copied to this buffer only if it's not backed by an array
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[8192];
+        }
+    };
+
+    private final boolean gzip;
+    private final Inflater inflater;
+    private final CRC32 crc;
+    private final long maxSize;
+    private long size;
+    private State state;
+    // Progress of gzip header and trailer
+    private int pos;
+    private int flags;
+    private int extraLength;
+    private int extraRead;
+    private int headerCrcRead;
+    private long trailer;
+    private boolean closed;
+
+    ContentDecoder(String contentEncoding, long maxSize) {
+        this.gzip = !contentEncoding.equals("deflate");
+        this.inflater = new Inflater(gzip);
+        this.crc = gzip ? new CRC32() : null;
+        this.maxSize = maxSize;
+        this.state = gzip ? State.HEADER : State.BODY;
+    }
+
+    /**
+     * Determines if the given value of {@code content-encoding} header is
+     * supported.
+     */
+    static boolean supports(String contentEncoding) {
+        return contentEncoding.equals("gzip") || contentEncoding.equals("x-gzip") || contentEncoding.equals("deflate");
+    }
+
+    /**
+     * Decompresses the given chunk and passes the result to the given action.
+     */
+    void decode(ByteBuffer data, Action<ByteBuffer> action) throws IOException {
+        if (data.hasArray()) {
+            decode(data.array(), data.arrayOffset() + data.position(), data.remaining(), action);
+        } else {
+            byte[] buffer = buffers.get();
+            ByteBuffer input = data.duplicate();
+            while (input.hasRemaining()) {
+                int length = Math.min(buffer.length, input.remaining());
+                input.get(buffer, 0, length);
+                decode(buffer, 0, length, action);
+            }
+        }
+    }
+
+    private void decode(byte[] bytes, int offset, int length, Action<ByteBuffer> action) throws IOException {
+        int end = offset + length;
+        while (offset < end && !closed) {
+            switch (state) {
+            case HEADER:
+                offset = readHeader(bytes, offset, end);
+                break;
+            case BODY:
+                offset = inflate(bytes, offset, end, action);
+                break;
+            case TRAILER:
+                offset = readTrailer(bytes, offset, end);
+                break;
+            case DONE:
+                throw new ZipException("Unexpected data after the end of the compressed body");
+            }
+        }
+    }
+
+    private int readHeader(byte[] bytes, int offset, int end) throws ZipException {
+        while (offset < end && state == State.HEADER) {
+            int b = bytes[offset++] & 0xff;
+            if (pos < 10) {
+                if ((pos == 0 && b != 0x1f) || (pos == 1 && b != 0x8b) || (pos == 2 && b != 8)) {
+                    throw new ZipException("Not in gzip format");
+                }
+                if (pos == 3) {
+                    flags = b;
+                }
+                pos++;
+            } else if ((flags & FEXTRA) != 0) {
+                // 2 bytes of length followed by the extra field
+                if (extraRead < 2) {
+                    extraLength |= b << (8 * extraRead);
+                }
+                extraRead++;
+                if (extraRead >= 2 && extraRead == extraLength + 2) {
+                    flags &= ~FEXTRA;
+                }
+            } else if ((flags & FNAME) != 0) {
+                if (b == 0) {
+                    flags &= ~FNAME;
+                }
+            } else if ((flags & FCOMMENT) != 0) {
+                if (b == 0) {
+                    flags &= ~FCOMMENT;
+                }
+            } else if ((flags & FHCRC) != 0) {
+                if (++headerCrcRead == 2) {
+                    flags &= ~FHCRC;
+                }
+            }
+            if (pos >= 10 && (flags & (FEXTRA | FNAME | FCOMMENT | FHCRC)) == 0) {
+                state = State.BODY;
+            }
+        }
+        return offset;
+    }
+
+    private int inflate(byte[] bytes, int offset, int end, Action<ByteBuffer> action) throws IOException {
+        inflater.setInput(bytes, offset, end - offset);
+        try {
+            // Each chunk is handed over to the action as it is
+            byte[] chunk = null;
+            while (!inflater.finished()) {
+                if (chunk == null) {
+                    chunk = new byte[8192];
+                }
+                int n = inflater.inflate(chunk);
+                if (n == 0) {
+                    if (inflater.needsInput()) {
+                        break;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new ZipException("Preset dictionary is not supported");
+                    }
+                    continue;
+                }
+                size += n;
+                if (size > maxSize) {
+                    throw new IOException("Decompressed request body exceeds " + maxSize + " bytes");
+                }
+                if (crc != null) {
+                    crc.update(chunk, 0, n);
+                }
+                action.on(ByteBuffer.wrap(chunk, 0, n));
+                chunk = null;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        int remaining = inflater.getRemaining();
+        if (inflater.finished()) {
+            state = gzip ? State.TRAILER : State.DONE;
+            pos = 0;
+        }
+        return end - remaining;
+    }
+
+    private int readTrailer(byte[] bytes, int offset, int end) throws ZipException {
+        while (offset < end && pos < 8) {
+            trailer |= (long) (bytes[offset++] & 0xff) << (8 * pos++);
+        }
+        if (pos == 8) {
+            if ((trailer & 0xffffffffL) != crc.getValue() || (trailer >>> 32) != (inflater.getBytesWritten() & 0xffffffffL)) {
+                throw new ZipException("Corrupt gzip trailer");
+            }
+            state = State.DONE;
+        }
+        return offset;
+    }
+
+    /**
+     * Determines if the whole compressed body has been read.
+     */
+    boolean finished() {
+        return state == State.DONE;
+    }
+
+    /**
+     * Releases the resources held by the underlying {@link Inflater}.
+     */
+    void close() {
+        if (!closed) {
+            closed = true;
+            inflater.end();
+        }
+    }
+
+    private enum State {
+        HEADER, BODY, TRAILER, DONE
+    }
+
+}
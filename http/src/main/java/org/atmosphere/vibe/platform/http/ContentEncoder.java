@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.http;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a response body chunk by chunk with {@code gzip} or
+ * {@code deflate}. Every chunk is flushed so that a streaming response like
+ * long polling reaches the client without waiting for the end.
+ */
+class ContentEncoder {
+
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final Deflater deflater;
+    private final CRC32 crc;
+    // Compressed into this buffer which grows as needed and is reused for
+    // every chunk of the exchange
+    private byte[] output;
+    private int count;
+    private boolean headerWritten;
+    private boolean closed;
+
+    ContentEncoder(String contentEncoding, int compressionLevel) {
+        boolean gzip = contentEncoding.equals("gzip");
+        this.deflater = new Deflater(compressionLevel, gzip);
+        this.crc = gzip ? new CRC32() : null;
+    }
+
+    /**
+     * Compresses the given chunk. If {@code last} is true, the compressed
+     * stream is completed and the encoder is closed.
+     */
+    synchronized ByteBuffer encode(ByteBuffer data, boolean last) {
+        if (closed || (!last && !data.hasRemaining())) {
+            return EMPTY;
+        }
+        int length = data.remaining();
+        if (output == null) {
+            output = new byte[Math.max(256, length / 2)];
+        }
+        count = 0;
+        if (crc != null && !headerWritten) {
+            headerWritten = true;
+            ensure(GZIP_HEADER.length);
+            System.arraycopy(GZIP_HEADER, 0, output, count, GZIP_HEADER.length);
+            count += GZIP_HEADER.length;
+        }
+        byte[] bytes;
+        int offset;
+        if (data.hasArray()) {
+            bytes = data.array();
+            offset = data.arrayOffset() + data.position();
+        } else {
+            bytes = new byte[length];
+            offset = 0;
+            data.duplicate().get(bytes);
+        }
+        if (crc != null) {
+            crc.update(bytes, offset, length);
+        }
+        deflater.setInput(bytes, offset, length);
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                ensure(64);
+                count += deflater.deflate(output, count, output.length - count);
+            }
+            if (crc != null) {
+                ensure(8);
+                writeInt((int) crc.getValue());
+                writeInt((int) deflater.getBytesRead());
+            }
+            close();
+        } else {
+            // The output may be pending as long as it fills the buffer
+            do {
+                ensure(64);
+                count += deflater.deflate(output, count, output.length - count, Deflater.SYNC_FLUSH);
+            } while (count == output.length);
+        }
+        // The platform owns a written buffer until it's written so the
+        // result is copied out of the reused one
+        return ByteBuffer.wrap(Arrays.copyOf(output, count));
+    }
+
+    private void ensure(int space) {
+        if (output.length - count < space) {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, count + space));
+        }
+    }
+
+    private void writeInt(int value) {
+        // Little endian
+        output[count++] = (byte) value;
+        output[count++] = (byte) (value >> 8);
+        output[count++] = (byte) (value >> 16);
+        output[count++] = (byte) (value >> 24);
+    }
+
+    /**
+     * Releases the resources held by the underlying {@link Deflater}.
+     */
+    synchronized void close() {
+        if (!closed) {
+            closed = true;
+            deflater.end();
+        }
+    }
+
+}
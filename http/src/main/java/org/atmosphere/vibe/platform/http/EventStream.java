@@ -0,0 +1,322 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.atmosphere.vibe.platform.action.VoidAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes Server-Sent Events to the response of {@link ServerHttpExchange}.
+ * The response headers are set when it's created and events are encoded into
+ * a buffer which is written to the exchange at once when it's flushed, so
+ * that several events can be sent with a single write of the platform.
+ * <p>
+ * By default, every event is flushed as soon as it's sent. With
+ * {@link Options#batchSize(int)}, events are buffered until the given size is
+ * reached, {@link EventStream#flush()} is called or
+ * {@link Options#flushInterval(long)} elapses. With
+ * {@link Options#heartbeat(long)}, a comment is sent if nothing has been
+ * written during the interval to keep the connection alive.
+ * <p>
+ * Unlike {@link ServerHttpExchange}, this class is thread-safe so that events
+ * can be sent from any thread. Scheduled tasks are cancelled when the
+ * response ends or the connection is closed.
+ *
+ * <pre>
+ * EventStream stream = new EventStream(http, new EventStream.Options().heartbeat(20000));
+ * stream.send("message", "Hello");
+ * </pre>
+ *
+ * @see <a href="http://www.w3.org/TR/eventsource/">Server-Sent Events</a>
+ */
+public class EventStream {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String HEARTBEAT = ":\n\n";
+
+    private final Logger logger = LoggerFactory.getLogger(EventStream.class);
+    private final ServerHttpExchange http;
+    private final Options options;
+    // Reused for every batch
+    private final StringBuilder buffer = new StringBuilder(256);
+    private ScheduledFuture<?> heartbeatFuture;
+    private ScheduledFuture<?> flushFuture;
+    private boolean written;
+    private boolean closed;
+
+    /**
+     * Creates an event stream flushing every event.
+     */
+    public EventStream(ServerHttpExchange http) {
+        this(http, new Options());
+    }
+
+    /**
+     * Creates an event stream with the given options. The response headers
+     * are set immediately.
+     */
+    public EventStream(ServerHttpExchange http, Options options) {
+        this.http = http;
+        this.options = new Options(options);
+        http.setHeader("content-type", "text/event-stream; charset=utf-8").setHeader("cache-control", "no-cache");
+        VoidAction stop = new VoidAction() {
+            @Override
+            public void on() {
+                stop();
+            }
+        };
+        http.onfinish(stop).onclose(stop);
+        if (this.options.heartbeat() > 0) {
+            heartbeatFuture = this.options.scheduler().scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    heartbeat();
+                }
+            }, this.options.heartbeat(), this.options.heartbeat(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends an event with the given data and no event name.
+     */
+    public EventStream send(String data) {
+        return send(null, null, data);
+    }
+
+    /**
+     * Sends an event with the given name and data.
+     */
+    public EventStream send(String event, String data) {
+        return send(null, event, data);
+    }
+
+    /**
+     * Sends an event with the given id, name and data. The id and the name
+     * may be {@code null} and must not contain a line break. Each line of the
+     * data becomes a {@code data} field.
+     */
+    public synchronized EventStream send(String id, String event, String data) {
+        checkField(id);
+        checkField(event);
+        if (closed) {
+            logger.trace("{} is closed so the event {} is discarded", this, data);
+            return this;
+        }
+        if (id != null) {
+            buffer.append("id: ").append(id).append('\n');
+        }
+        if (event != null) {
+            buffer.append("event: ").append(event).append('\n');
+        }
+        int start = 0;
+        int length = data.length();
+        for (int i = 0; i < length; i++) {
+            char c = data.charAt(i);
+            if (c == '\r' || c == '\n') {
+                buffer.append("data: ").append(data, start, i).append('\n');
+                if (c == '\r' && i + 1 < length && data.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        buffer.append("data: ").append(data, start, length).append("\n\n");
+        buffered();
+        return this;
+    }
+
+    /**
+     * Tells the client to wait the given milliseconds before reconnecting.
+     */
+    public synchronized EventStream retry(long retry) {
+        if (!closed) {
+            buffer.append("retry: ").append(retry).append("\n\n");
+            buffered();
+        }
+        return this;
+    }
+
+    private static void checkField(String value) {
+        if (value != null && (value.indexOf('\n') != -1 || value.indexOf('\r') != -1)) {
+            throw new IllegalArgumentException("Field must not contain a line break: " + value);
+        }
+    }
+
+    private void buffered() {
+        if (buffer.length() >= options.batchSize()) {
+            flush();
+        } else if (flushFuture == null && options.flushInterval() > 0) {
+            flushFuture = options.scheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, options.flushInterval(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the buffered events to the exchange.
+     */
+    public synchronized EventStream flush() {
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+        if (!closed && buffer.length() > 0) {
+            ByteBuffer data = UTF_8.encode(buffer.toString());
+            buffer.setLength(0);
+            written = true;
+            http.write(data);
+        }
+        return this;
+    }
+
+    private synchronized void heartbeat() {
+        if (closed) {
+            return;
+        }
+        if (!written && buffer.length() == 0) {
+            logger.trace("{} sends a heartbeat", this);
+            http.write(UTF_8.encode(HEARTBEAT));
+        }
+        written = false;
+    }
+
+    /**
+     * Flushes the buffered events and ends the response.
+     */
+    public synchronized void close() {
+        if (!closed) {
+            flush();
+            stop();
+            http.end();
+        }
+    }
+
+    private synchronized void stop() {
+        closed = true;
+        buffer.setLength(0);
+        if (heartbeatFuture != null) {
+            heartbeatFuture.cancel(false);
+            heartbeatFuture = null;
+        }
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+    }
+
+    /**
+     * Options for {@link EventStream}.
+     */
+    public static class Options {
+
+        private int batchSize;
+        private long flushInterval;
+        private long heartbeat;
+        private ScheduledExecutorService scheduler;
+
+        public Options() {
+        }
+
+        public Options(Options options) {
+            batchSize = options.batchSize;
+            flushInterval = options.flushInterval;
+            heartbeat = options.heartbeat;
+            scheduler = options.scheduler;
+        }
+
+        public int batchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Buffers events until they reach the given size in characters. The
+         * default value is 0, which means that every event is flushed
+         * immediately.
+         */
+        public Options batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public long flushInterval() {
+            return flushInterval;
+        }
+
+        /**
+         * Flushes buffered events within the given milliseconds even if they
+         * don't reach the batch size. The default value is 0, which means
+         * that they wait for the batch size or an explicit flush.
+         */
+        public Options flushInterval(long flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        public long heartbeat() {
+            return heartbeat;
+        }
+
+        /**
+         * Sends a comment if nothing has been written for the given
+         * milliseconds. The default value is 0, which disables heartbeat.
+         */
+        public Options heartbeat(long heartbeat) {
+            this.heartbeat = heartbeat;
+            return this;
+        }
+
+        public ScheduledExecutorService scheduler() {
+            return scheduler != null ? scheduler : DefaultScheduler.INSTANCE;
+        }
+
+        /**
+         * The scheduler to run heartbeat and flush tasks. By default, a
+         * shared single daemon thread is used.
+         */
+        public Options scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+    }
+
+    // Created only when it's needed
+    private static class DefaultScheduler {
+
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "vibe-event-stream");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.http;
+
+import java.util.zip.Deflater;
+
+/**
+ * Options for response compression. An exchange configured with an instance
+ * through {@link ServerHttpExchange#setCompression(HttpCompression)}
+ * compresses the response body with {@code gzip} or {@code deflate} according
+ * to the request header, {@code accept-encoding}.
+ * <p>
+ * A response is sent as it is if it already has {@code content-encoding} or
+ * {@code content-length} header, if its {@code content-type} indicates
+ * compressed data like images or if it's completed by
+ * {@link ServerHttpExchange#end(java.nio.ByteBuffer)} with data smaller than
+ * the threshold.
+ *
+ * @see <a href="http://tools.ietf.org/html/rfc7231#section-5.3.4">RFC7231 -
+ *      Accept-Encoding</a>
+ */
+public class HttpCompression {
+
+    private static final String[] INCOMPRESSIBLE_TYPES = { "image/", "audio/", "video/", "application/zip", "application/gzip",
+        "application/x-gzip", "application/x-compress", "application/x-7z-compressed", "application/x-rar-compressed",
+        "application/pdf", "font/woff" };
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int threshold = 256;
+
+    public int compressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * The compression level of {@link Deflater}. The default value is
+     * {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public HttpCompression compressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public int threshold() {
+        return threshold;
+    }
+
+    /**
+     * A response completed at once with data smaller than the given size in
+     * bytes is sent uncompressed. The default value is 256.
+     */
+    public HttpCompression threshold(int threshold) {
+        this.threshold = threshold;
+        return this;
+    }
+
+    /**
+     * Chooses a content coding from the given value of {@code accept-encoding}
+     * request header. {@code gzip} is preferred to {@code deflate}. If neither
+     * is acceptable, {@code null} is returned.
+     */
+    public String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean gzip = false;
+        boolean deflate = false;
+        boolean any = false;
+        boolean gzipRejected = false;
+        boolean deflateRejected = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] tokens = coding.split(";");
+            String name = tokens[0].trim().toLowerCase();
+            boolean rejected = isRejected(tokens);
+            switch (name) {
+            case "gzip":
+            case "x-gzip":
+                gzip = !rejected;
+                gzipRejected = rejected;
+                break;
+            case "deflate":
+                deflate = !rejected;
+                deflateRejected = rejected;
+                break;
+            case "*":
+                any = !rejected;
+                break;
+            default:
+                break;
+            }
+        }
+        // An explicit rejection beats the wildcard
+        return gzip || (any && !gzipRejected) ? "gzip" : deflate || (any && !deflateRejected) ? "deflate" : null;
+    }
+
+    private static boolean isRejected(String[] tokens) {
+        for (int i = 1; i < tokens.length; i++) {
+            String param = tokens[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines if a response of the given {@code content-type} is worth
+     * compressing.
+     */
+    public boolean compressible(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.trim().toLowerCase();
+        if (type.startsWith("image/svg")) {
+            return true;
+        }
+        for (String incompressible : INCOMPRESSIBLE_TYPES) {
+            if (type.startsWith(incompressible)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.http;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A read-only view of HTTP headers. Unlike {@link java.util.Map}, header names
+ * are case-insensitive.
+ *
+ * @see <a href="http://tools.ietf.org/html/rfc7230#section-3.2">RFC7230 -
+ *      Header Fields</a>
+ */
+public interface HttpHeaders {
+
+    /**
+     * The names of the headers. {@link Set#contains(Object)} of the returned
+     * set is case-insensitive.
+     */
+    Set<String> names();
+
+    /**
+     * Returns the first header associated with the given name or {@code null}
+     * if no header is found.
+     */
+    String get(String name);
+
+    /**
+     * Returns the headers associated with the given name or empty list if no
+     * header is found.
+     */
+    List<String> getAll(String name);
+
+}
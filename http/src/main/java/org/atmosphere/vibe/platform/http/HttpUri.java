@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.http;
+
+/**
+ * Parses a request URI the same way for HTTP exchanges and WebSocket
+ * connections, so that a path matches the same route in both.
+ */
+public final class HttpUri {
+
+    private HttpUri() {
+    }
+
+    /**
+     * Returns the path of the given request URI without the query string.
+     * The absolute form used by requests through a proxy is supported, and
+     * an empty path is returned as {@code /}. It's not decoded.
+     */
+    public static String path(String uri) {
+        int start = 0;
+        // Absolute form used by requests through a proxy
+        int schemeEnd = uri.indexOf("://");
+        if (schemeEnd != -1 && schemeEnd < uri.indexOf('/')) {
+            start = uri.indexOf('/', schemeEnd + 3);
+            if (start == -1) {
+                start = uri.length();
+            }
+        }
+        int end = uri.indexOf('?', start);
+        String path = uri.substring(start, end == -1 ? uri.length() : end);
+        return path.isEmpty() ? "/" : path;
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.http;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.atmosphere.vibe.platform.action.Action;
+import org.atmosphere.vibe.platform.action.TimerWheel;
+import org.atmosphere.vibe.platform.action.VoidAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parks exchanges of long polling until there is something to respond with
+ * or they time out. Timeouts are managed by a {@link TimerWheel}, shared by
+ * the whole process by default, instead of the timer of each container, so
+ * that a lot of parked exchanges cost little and none of them is left
+ * without a deadline.
+ * <p>
+ * When an exchange times out, the expire action is executed on the thread of
+ * the wheel. It ends the response with no body by default. To respond before
+ * that, claim the exchange with {@link Parked#unpark()} first; if it returns
+ * false, the exchange has already expired or been closed. An exchange is
+ * unparked automatically when its response ends or its connection is closed.
+ *
+ * <pre>
+ * LongPollParking parking = new LongPollParking().timeout(30000);
+ * Parked parked = parking.park(http);
+ * // Later, from any thread
+ * if (parked.unpark()) {
+ *     parked.exchange().end(message);
+ * }
+ * </pre>
+ */
+public class LongPollParking {
+
+    private final Logger logger = LoggerFactory.getLogger(LongPollParking.class);
+    private final TimerWheel wheel;
+    private final AtomicLong size = new AtomicLong();
+    private long timeout = 30000;
+    private Action<ServerHttpExchange> expireAction = new Action<ServerHttpExchange>() {
+        @Override
+        public void on(ServerHttpExchange http) {
+            http.end();
+        }
+    };
+
+    /**
+     * Creates a parking using the shared timer wheel.
+     */
+    public LongPollParking() {
+        this(TimerWheel.shared());
+    }
+
+    /**
+     * Creates a parking using the given timer wheel.
+     */
+    public LongPollParking(TimerWheel wheel) {
+        this.wheel = wheel;
+    }
+
+    public long timeout() {
+        return timeout;
+    }
+
+    /**
+     * How long an exchange can be parked in milliseconds. The default value
+     * is 30000.
+     */
+    public LongPollParking timeout(long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Replaces the action to respond to an exchange which has timed out. It's
+     * executed on the thread of the timer wheel so it shouldn't block.
+     */
+    public LongPollParking onexpire(Action<ServerHttpExchange> action) {
+        this.expireAction = action;
+        return this;
+    }
+
+    /**
+     * The number of exchanges parked now.
+     */
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Parks the given exchange until it's unparked or times out.
+     */
+    public Parked park(final ServerHttpExchange http) {
+        final Parked parked = new Parked(http);
+        size.incrementAndGet();
+        parked.timeout = wheel.schedule(timeout, new VoidAction() {
+            @Override
+            public void on() {
+                if (parked.claim()) {
+                    logger.trace("{} has timed out", http);
+                    expireAction.on(http);
+                }
+            }
+        });
+        VoidAction unpark = new VoidAction() {
+            @Override
+            public void on() {
+                parked.unpark();
+            }
+        };
+        http.onfinish(unpark).onclose(unpark);
+        if (parked.claimed.get()) {
+            // Unparked before the timeout is assigned
+            parked.timeout.cancel();
+        }
+        return parked;
+    }
+
+    /**
+     * An exchange parked by {@link LongPollParking}.
+     */
+    public class Parked {
+
+        private final ServerHttpExchange http;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile TimerWheel.Timeout timeout;
+
+        Parked(ServerHttpExchange http) {
+            this.http = http;
+        }
+
+        public ServerHttpExchange exchange() {
+            return http;
+        }
+
+        /**
+         * Unparks the exchange and cancels its timeout. Returns true if this
+         * call has claimed the exchange so that the caller can respond to it.
+         */
+        public boolean unpark() {
+            if (!claim()) {
+                return false;
+            }
+            TimerWheel.Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            return true;
+        }
+
+        private boolean claim() {
+            if (claimed.compareAndSet(false, true)) {
+                size.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+}
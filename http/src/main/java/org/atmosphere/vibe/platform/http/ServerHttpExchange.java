@@ -17,6 +17,7 @@ package org.atmosphere.vibe.platform.http;
 
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.atmosphere.vibe.platform.action.Action;
@@ -37,14 +38,39 @@ public interface ServerHttpExchange {
      */
     String uri();
 
+    /**
+     * The path of the request URI without the query string. It's not decoded.
+     */
+    String path();
+
+    /**
+     * The query parameters of the request URI. Names and values are decoded
+     * as {@code application/x-www-form-urlencoded} with {@code UTF-8} and the
+     * values of each name are in the order they appear. The returned map is
+     * unmodifiable and computed once.
+     */
+    Map<String, List<String>> params();
+
+    /**
+     * Returns the first query parameter associated with the given name or
+     * {@code null} if there is no such parameter.
+     */
+    String param(String name);
+
     /**
      * The name of the request method.
      */
     String method();
 
     /**
-     * The names of the request headers. HTTP header is not case-sensitive but
-     * {@link Set} is case-sensitive.
+     * The request headers. The view is created once and header names are
+     * case-insensitive.
+     */
+    HttpHeaders headers();
+
+    /**
+     * The names of the request headers. {@link Set#contains(Object)} of the
+     * returned set is case-insensitive.
      */
     Set<String> headerNames();
 
@@ -59,6 +85,19 @@ public interface ServerHttpExchange {
      */
     List<String> headers(String name);
 
+    /**
+     * The media type of the request body, the value of {@code content-type}
+     * header without parameters in lower case, or {@code null} if the header
+     * is not given.
+     */
+    String mediaType();
+
+    /**
+     * The charset of the request body specified by {@code charset} parameter
+     * of {@code content-type} header or {@code null} if it's not given.
+     */
+    String charset();
+
     /**
      * Reads the request body. If the request header, {@code content-type},
      * starts with {@code text/}, the body is read as text, and if not, as
@@ -121,6 +160,18 @@ public interface ServerHttpExchange {
      */
     ServerHttpExchange readAsBinary();
 
+    /**
+     * Limits the size of the request body decompressed according to the
+     * request header, {@code content-encoding}. A request body encoded with
+     * {@code gzip} or {@code deflate} is decompressed before being passed to
+     * event handlers. If it exceeds the limit or turns out to be corrupt, the
+     * reading stops and the error is passed to
+     * {@link ServerHttpExchange#onerror(Action)}. The default value is 16MB.
+     * <p>
+     * This method should be called before reading the body.
+     */
+    ServerHttpExchange setMaxDecompressedSize(long maxSize);
+
     /**
      * Attaches an action to be called with a chunk from the request body. The
      * allowed data type is {@link String} for text body and {@link ByteBuffer}
@@ -158,6 +209,14 @@ public interface ServerHttpExchange {
      */
     ServerHttpExchange setHeader(String name, Iterable<String> value);
 
+    /**
+     * Compresses the response body with the given options if the request
+     * header, {@code accept-encoding}, allows. The body written afterwards is
+     * compressed chunk by chunk so that streaming works as before. It should
+     * be called before writing anything to the response body.
+     */
+    ServerHttpExchange setCompression(HttpCompression compression);
+
     /**
      * Writes a text chunk to the response body using the charset from the
      * response header, {@code content-type}. If it's not given,
@@ -171,7 +230,9 @@ public interface ServerHttpExchange {
     ServerHttpExchange write(String data, String charsetName);
 
     /**
-     * Writes a binary chunk to the response body.
+     * Writes a binary chunk to the response body. The buffer is handed over
+     * to the platform which may write it later, so it shouldn't be modified
+     * after this call.
      */
     ServerHttpExchange write(ByteBuffer byteBuffer);
 
@@ -197,7 +258,9 @@ public interface ServerHttpExchange {
 
     /**
      * Writes a binary chunk to the response body and completes the response
-     * through {@link ServerHttpExchange#end()}.
+     * through {@link ServerHttpExchange#end()}. As with
+     * {@link ServerHttpExchange#write(ByteBuffer)}, the buffer shouldn't be
+     * modified after this call.
      */
     ServerHttpExchange end(ByteBuffer byteBuffer);
 
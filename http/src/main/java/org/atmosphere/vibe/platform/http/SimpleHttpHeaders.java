@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * {@link HttpHeaders} holding headers in its own map. It's useful when the
+ * platform's header structure is case-sensitive or expensive to access. It
+ * should be fully populated through {@link #add(String, String)} before being
+ * shared.
+ */
+public class SimpleHttpHeaders implements HttpHeaders {
+
+    private final Map<String, Values> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Set<String> names = Collections.unmodifiableSet(map.keySet());
+
+    /**
+     * Adds a header.
+     */
+    public SimpleHttpHeaders add(String name, String value) {
+        Values values = map.get(name);
+        if (values == null) {
+            values = new Values();
+            map.put(name, values);
+        }
+        values.list.add(value);
+        return this;
+    }
+
+    @Override
+    public Set<String> names() {
+        return names;
+    }
+
+    @Override
+    public String get(String name) {
+        Values values = map.get(name);
+        return values != null ? values.list.get(0) : null;
+    }
+
+    @Override
+    public List<String> getAll(String name) {
+        Values values = map.get(name);
+        return values != null ? values.view : Collections.<String> emptyList();
+    }
+
+    // Keeps the read-only view to avoid creating it on every access
+    private static class Values {
+        final List<String> list = new ArrayList<>(1);
+        final List<String> view = Collections.unmodifiableList(list);
+    }
+
+}
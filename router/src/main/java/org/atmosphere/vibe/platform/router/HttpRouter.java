@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.router;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.atmosphere.vibe.platform.action.Action;
+import org.atmosphere.vibe.platform.http.HttpStatus;
+import org.atmosphere.vibe.platform.http.ServerHttpExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches {@link ServerHttpExchange} to the action registered for its
+ * method and path. As an action of exchange, it can be passed to any bridge's
+ * {@code onhttp} method. The cost of dispatch doesn't grow with the number of
+ * routes. See {@link RouteTree} for the syntax of patterns.
+ * <p>
+ * If no route matches the path, the not found action is executed, which
+ * responds with {@code 404} by default. If a route matches the path but not
+ * the method, {@code 405} is returned with {@code allow} header. A
+ * {@code HEAD} request is handled by the {@code GET} route unless there is a
+ * {@code HEAD} route.
+ * <p>
+ * Routes should be added before dispatching exchanges.
+ *
+ * <pre>
+ * HttpRouter router = new HttpRouter()
+ * .get("/users/:id", new Action&lt;Routed&lt;ServerHttpExchange&gt;&gt;() {...})
+ * .post("/users", new Action&lt;Routed&lt;ServerHttpExchange&gt;&gt;() {...});
+ * new VibeServlet().onhttp(router);
+ * </pre>
+ */
+public class HttpRouter implements Action<ServerHttpExchange> {
+
+    private static final String ANY = "*";
+
+    private final Logger logger = LoggerFactory.getLogger(HttpRouter.class);
+    private final RouteTree<Map<String, Action<Routed<ServerHttpExchange>>>> tree = new RouteTree<>();
+    private Action<ServerHttpExchange> notFoundAction = new Action<ServerHttpExchange>() {
+        @Override
+        public void on(ServerHttpExchange http) {
+            http.setStatus(HttpStatus.NOT_FOUND).end();
+        }
+    };
+
+    /**
+     * Adds a route for the given method and pattern.
+     */
+    public HttpRouter route(String method, String pattern, Action<Routed<ServerHttpExchange>> action) {
+        Map<String, Action<Routed<ServerHttpExchange>>> actions = tree.get(pattern);
+        if (actions == null) {
+            actions = new LinkedHashMap<>();
+            tree.add(pattern, actions);
+        }
+        String key = method.toUpperCase();
+        if (actions.containsKey(key)) {
+            throw new IllegalArgumentException("Route for " + key + " " + pattern + " is already added");
+        }
+        actions.put(key, action);
+        return this;
+    }
+
+    /**
+     * Adds a route for {@code GET} method.
+     */
+    public HttpRouter get(String pattern, Action<Routed<ServerHttpExchange>> action) {
+        return route("GET", pattern, action);
+    }
+
+    /**
+     * Adds a route for {@code POST} method.
+     */
+    public HttpRouter post(String pattern, Action<Routed<ServerHttpExchange>> action) {
+        return route("POST", pattern, action);
+    }
+
+    /**
+     * Adds a route for {@code PUT} method.
+     */
+    public HttpRouter put(String pattern, Action<Routed<ServerHttpExchange>> action) {
+        return route("PUT", pattern, action);
+    }
+
+    /**
+     * Adds a route for {@code DELETE} method.
+     */
+    public HttpRouter delete(String pattern, Action<Routed<ServerHttpExchange>> action) {
+        return route("DELETE", pattern, action);
+    }
+
+    /**
+     * Adds a route for any method. A route for a specific method on the same
+     * pattern takes precedence.
+     */
+    public HttpRouter all(String pattern, Action<Routed<ServerHttpExchange>> action) {
+        return route(ANY, pattern, action);
+    }
+
+    /**
+     * Replaces the action to be executed if no route matches the path.
+     */
+    public HttpRouter notFound(Action<ServerHttpExchange> action) {
+        this.notFoundAction = action;
+        return this;
+    }
+
+    @Override
+    public void on(ServerHttpExchange http) {
+        RouteTree.Match<Map<String, Action<Routed<ServerHttpExchange>>>> match = tree.match(http.path());
+        if (match == null) {
+            logger.trace("No route matches {}", http.path());
+            notFoundAction.on(http);
+            return;
+        }
+        Map<String, Action<Routed<ServerHttpExchange>>> actions = match.value();
+        String method = http.method();
+        Action<Routed<ServerHttpExchange>> action = actions.get(method);
+        if (action == null && method.equals("HEAD")) {
+            action = actions.get("GET");
+        }
+        if (action == null) {
+            action = actions.get(ANY);
+        }
+        if (action == null) {
+            logger.trace("No route for {} matches {}", method, http.path());
+            Set<String> allowed = new LinkedHashSet<>(actions.keySet());
+            // HEAD is served by the route for GET
+            if (allowed.contains("GET")) {
+                allowed.add("HEAD");
+            }
+            http.setHeader("allow", allowed).setStatus(HttpStatus.METHOD_NOT_ALLOWED).end();
+            return;
+        }
+        action.on(new Routed<>(http, match.params()));
+    }
+
+}
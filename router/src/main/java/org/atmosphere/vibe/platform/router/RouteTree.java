@@ -0,0 +1,326 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.router;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Radix tree mapping path patterns to values. A pattern consists of static
+ * text, named parameters matching a single path segment like {@code :id} and
+ * a catch-all parameter matching the rest of the path like {@code *path} at
+ * the end.
+ * <p>
+ * Common prefixes of patterns are shared by nodes so that the cost of
+ * matching depends on the length of the path, not on the number of patterns.
+ * Static text is preferred to a named parameter and a named parameter is
+ * preferred to a catch-all parameter.
+ * <p>
+ * Adding patterns is not thread-safe but matching is once all patterns are
+ * added.
+ *
+ * <pre>
+ * tree.add("/users/:id", a).add("/users/me", b).add("/static/*path", c);
+ * tree.match("/users/1").params(); // {id=1}
+ * tree.match("/users/me").value(); // b
+ * tree.match("/static/js/vibe.js").params(); // {path=js/vibe.js}
+ * </pre>
+ */
+public class RouteTree<T> {
+
+    private final Node<T> root = new Node<>("");
+
+    /**
+     * Adds the given pattern associated with the given value. A pattern
+     * matching the same paths as a pattern already added is not allowed.
+     */
+    public RouteTree<T> add(String pattern, T value) {
+        if (pattern == null || value == null) {
+            throw new NullPointerException();
+        }
+        insert(root, pattern, 0, pattern, value);
+        return this;
+    }
+
+    /**
+     * Returns the value associated with the given pattern which has been
+     * added or {@code null}.
+     */
+    public T get(String pattern) {
+        Node<T> node = root;
+        int pos = 0;
+        while (node != null && pos < pattern.length()) {
+            char c = pattern.charAt(pos);
+            if (c == ':') {
+                int end = segmentEnd(pattern, pos);
+                node = node.param != null && node.paramName.equals(pattern.substring(pos + 1, end)) ? node.param : null;
+                pos = end;
+            } else if (c == '*') {
+                node = node.wildcard != null && node.wildcardName.equals(pattern.substring(pos + 1)) ? node.wildcard : null;
+                pos = pattern.length();
+            } else {
+                Node<T> child = node.child(c);
+                if (child == null || !pattern.startsWith(child.prefix, pos)) {
+                    return null;
+                }
+                node = child;
+                pos += child.prefix.length();
+            }
+        }
+        return node != null ? node.value : null;
+    }
+
+    private void insert(Node<T> node, String pattern, int pos, String original, T value) {
+        while (pos < pattern.length()) {
+            char c = pattern.charAt(pos);
+            if (c == ':') {
+                int end = segmentEnd(pattern, pos);
+                String name = pattern.substring(pos + 1, end);
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Parameter in " + original + " has no name");
+                }
+                if (node.param == null) {
+                    node.param = new Node<>("");
+                    node.paramName = name;
+                } else if (!node.paramName.equals(name)) {
+                    throw new IllegalArgumentException("Parameter :" + name + " in " + original + " conflicts with :" + node.paramName);
+                }
+                node = node.param;
+                pos = end;
+            } else if (c == '*') {
+                String name = pattern.substring(pos + 1);
+                if (name.isEmpty() || name.indexOf('/') != -1) {
+                    throw new IllegalArgumentException("Catch-all parameter in " + original + " must be named and at the end");
+                }
+                if (node.wildcard == null) {
+                    node.wildcard = new Node<>("");
+                    node.wildcardName = name;
+                } else if (!node.wildcardName.equals(name)) {
+                    throw new IllegalArgumentException("Parameter *" + name + " in " + original + " conflicts with *" + node.wildcardName);
+                }
+                node = node.wildcard;
+                pos = pattern.length();
+            } else {
+                int end = pos;
+                while (end < pattern.length() && pattern.charAt(end) != ':' && pattern.charAt(end) != '*') {
+                    end++;
+                }
+                node = insertStatic(node, pattern.substring(pos, end));
+                pos = end;
+            }
+        }
+        if (node.value != null) {
+            throw new IllegalArgumentException("Pattern " + original + " is already added");
+        }
+        node.value = value;
+    }
+
+    // Returns the node for the end of the given static text splitting nodes
+    // if necessary
+    private Node<T> insertStatic(Node<T> node, String text) {
+        while (!text.isEmpty()) {
+            Node<T> child = node.child(text.charAt(0));
+            if (child == null) {
+                child = new Node<>(text);
+                node.addChild(child);
+                return child;
+            }
+            int common = commonPrefixLength(child.prefix, text);
+            if (common < child.prefix.length()) {
+                Node<T> parent = new Node<>(child.prefix.substring(0, common));
+                child.prefix = child.prefix.substring(common);
+                parent.addChild(child);
+                node.replaceChild(text.charAt(0), parent);
+                child = parent;
+            }
+            node = child;
+            text = text.substring(common);
+        }
+        return node;
+    }
+
+    private static int segmentEnd(String string, int pos) {
+        int end = string.indexOf('/', pos);
+        return end == -1 ? string.length() : end;
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Finds the value whose pattern matches the given path. If there is no
+     * such pattern, {@code null} is returned. Parameter values are
+     * percent-decoded.
+     */
+    public Match<T> match(String path) {
+        List<String> names = new ArrayList<>(4);
+        List<String> values = new ArrayList<>(4);
+        Node<T> node = match(root, path, 0, names, values);
+        if (node == null) {
+            return null;
+        }
+        Map<String, String> map;
+        if (names.isEmpty()) {
+            map = Collections.emptyMap();
+        } else {
+            map = new LinkedHashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                map.put(names.get(i), decode(values.get(i)));
+            }
+            map = Collections.unmodifiableMap(map);
+        }
+        return new Match<>(node.value, map);
+    }
+
+    private Node<T> match(Node<T> node, String path, int pos, List<String> names, List<String> values) {
+        if (pos == path.length()) {
+            if (node.value != null) {
+                return node;
+            }
+            if (node.wildcard != null) {
+                names.add(node.wildcardName);
+                values.add("");
+                return node.wildcard;
+            }
+            return null;
+        }
+        Node<T> child = node.child(path.charAt(pos));
+        if (child != null && path.startsWith(child.prefix, pos)) {
+            Node<T> found = match(child, path, pos + child.prefix.length(), names, values);
+            if (found != null) {
+                return found;
+            }
+        }
+        if (node.param != null) {
+            int end = segmentEnd(path, pos);
+            if (end > pos) {
+                names.add(node.paramName);
+                values.add(path.substring(pos, end));
+                Node<T> found = match(node.param, path, end, names, values);
+                if (found != null) {
+                    return found;
+                }
+                names.remove(names.size() - 1);
+                values.remove(values.size() - 1);
+            }
+        }
+        if (node.wildcard != null) {
+            names.add(node.wildcardName);
+            values.add(path.substring(pos));
+            return node.wildcard;
+        }
+        return null;
+    }
+
+    private static String decode(String string) {
+        if (string.indexOf('%') == -1) {
+            return string;
+        }
+        try {
+            // '+' means itself in a path
+            return URLDecoder.decode(string.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return string;
+        }
+    }
+
+    /**
+     * The result of {@link RouteTree#match(String)}.
+     */
+    public static class Match<T> {
+
+        private final T value;
+        private final Map<String, String> params;
+
+        Match(T value, Map<String, String> params) {
+            this.value = value;
+            this.params = params;
+        }
+
+        /**
+         * The value associated with the matched pattern.
+         */
+        public T value() {
+            return value;
+        }
+
+        /**
+         * The values of parameters in the matched pattern by name.
+         */
+        public Map<String, String> params() {
+            return params;
+        }
+
+    }
+
+    private static class Node<T> {
+
+        // Static text matched by this node. It's empty for parameter nodes
+        String prefix;
+        // The first characters of the children's prefixes
+        char[] indices = new char[0];
+        @SuppressWarnings("unchecked")
+        Node<T>[] children = new Node[0];
+        Node<T> param;
+        String paramName;
+        Node<T> wildcard;
+        String wildcardName;
+        T value;
+
+        Node(String prefix) {
+            this.prefix = prefix;
+        }
+
+        Node<T> child(char c) {
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addChild(Node<T> child) {
+            indices = Arrays.copyOf(indices, indices.length + 1);
+            indices[indices.length - 1] = child.prefix.charAt(0);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+        }
+
+        void replaceChild(char c, Node<T> child) {
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == c) {
+                    children[i] = child;
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
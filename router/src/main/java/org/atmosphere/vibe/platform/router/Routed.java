@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.router;
+
+import java.util.Map;
+
+/**
+ * An exchange or a websocket dispatched by a router with the path parameters
+ * of the matched route.
+ */
+public class Routed<T> {
+
+    private final T target;
+    private final Map<String, String> params;
+
+    Routed(T target, Map<String, String> params) {
+        this.target = target;
+        this.params = params;
+    }
+
+    /**
+     * The dispatched exchange or websocket.
+     */
+    public T target() {
+        return target;
+    }
+
+    /**
+     * The path parameters by name. The returned map is unmodifiable.
+     */
+    public Map<String, String> params() {
+        return params;
+    }
+
+    /**
+     * Returns the path parameter associated with the given name or
+     * {@code null}.
+     */
+    public String param(String name) {
+        return params.get(name);
+    }
+
+}
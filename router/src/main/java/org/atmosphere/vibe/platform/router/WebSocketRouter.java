@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.router;
+
+import org.atmosphere.vibe.platform.action.Action;
+import org.atmosphere.vibe.platform.http.HttpUri;
+import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches {@link ServerWebSocket} to the action registered for its path.
+ * As an action of websocket, it can be passed to any bridge's
+ * {@code onwebsocket} method. See {@link RouteTree} for the syntax of
+ * patterns.
+ * <p>
+ * If no route matches the path, the not found action is executed, which
+ * closes the websocket by default.
+ * <p>
+ * Routes should be added before dispatching websockets.
+ */
+public class WebSocketRouter implements Action<ServerWebSocket> {
+
+    private final Logger logger = LoggerFactory.getLogger(WebSocketRouter.class);
+    private final RouteTree<Action<Routed<ServerWebSocket>>> tree = new RouteTree<>();
+    private Action<ServerWebSocket> notFoundAction = new Action<ServerWebSocket>() {
+        @Override
+        public void on(ServerWebSocket ws) {
+            ws.close();
+        }
+    };
+
+    /**
+     * Adds a route for the given pattern.
+     */
+    public WebSocketRouter route(String pattern, Action<Routed<ServerWebSocket>> action) {
+        tree.add(pattern, action);
+        return this;
+    }
+
+    /**
+     * Replaces the action to be executed if no route matches the path.
+     */
+    public WebSocketRouter notFound(Action<ServerWebSocket> action) {
+        this.notFoundAction = action;
+        return this;
+    }
+
+    @Override
+    public void on(ServerWebSocket ws) {
+        String path = HttpUri.path(ws.uri());
+        RouteTree.Match<Action<Routed<ServerWebSocket>>> match = tree.match(path);
+        if (match == null) {
+            logger.trace("No route matches {}", path);
+            notFoundAction.on(ws);
+            return;
+        }
+        match.value().on(new Routed<>(ws, match.params()));
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.router;
+
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class RouteTreeTest {
+
+    @Test
+    public void static_patterns() {
+        RouteTree<String> tree = new RouteTree<String>()
+        .add("/", "root").add("/users", "users").add("/user", "user").add("/users/new", "new").add("/u", "u");
+        assertThat(tree.match("/").value(), is("root"));
+        assertThat(tree.match("/users").value(), is("users"));
+        assertThat(tree.match("/user").value(), is("user"));
+        assertThat(tree.match("/users/new").value(), is("new"));
+        assertThat(tree.match("/u").value(), is("u"));
+        assertThat(tree.match("/users").params().isEmpty(), is(true));
+        assertThat(tree.match("/us"), nullValue());
+        assertThat(tree.match("/users/"), nullValue());
+        assertThat(tree.match("/users/new/1"), nullValue());
+        assertThat(tree.match(""), nullValue());
+    }
+
+    @Test
+    public void params() {
+        RouteTree<String> tree = new RouteTree<String>()
+        .add("/users/:id", "user").add("/users/:id/posts/:post", "post");
+        assertThat(tree.match("/users/1").value(), is("user"));
+        assertThat(tree.match("/users/1").params(), hasEntry("id", "1"));
+        assertThat(tree.match("/users/1/posts/2").params(), hasEntry("id", "1"));
+        assertThat(tree.match("/users/1/posts/2").params(), hasEntry("post", "2"));
+        assertThat(tree.match("/users/a%20b").params(), hasEntry("id", "a b"));
+        assertThat(tree.match("/users/a+b").params(), hasEntry("id", "a+b"));
+        assertThat(tree.match("/users/"), nullValue());
+        assertThat(tree.match("/users/1/posts"), nullValue());
+    }
+
+    @Test
+    public void catch_all() {
+        RouteTree<String> tree = new RouteTree<String>().add("/static/*path", "static");
+        assertThat(tree.match("/static/js/vibe.js").params(), hasEntry("path", "js/vibe.js"));
+        assertThat(tree.match("/static/").params(), hasEntry("path", ""));
+        assertThat(tree.match("/static"), nullValue());
+    }
+
+    @Test
+    public void priority() {
+        RouteTree<String> tree = new RouteTree<String>()
+        .add("/users/me", "me").add("/users/:id", "user").add("/users/*rest", "rest").add("/users/:id/edit", "edit");
+        assertThat(tree.match("/users/me").value(), is("me"));
+        assertThat(tree.match("/users/mex").value(), is("user"));
+        assertThat(tree.match("/users/1").value(), is("user"));
+        assertThat(tree.match("/users/1/edit").value(), is("edit"));
+        assertThat(tree.match("/users/1/view").value(), is("rest"));
+        // Backtracks from the static node
+        assertThat(tree.match("/users/me/edit").value(), is("edit"));
+        assertThat(tree.match("/users/me/edit").params(), hasEntry("id", "me"));
+    }
+
+    @Test
+    public void get() {
+        RouteTree<String> tree = new RouteTree<String>().add("/users/:id", "user").add("/static/*path", "static");
+        assertThat(tree.get("/users/:id"), is("user"));
+        assertThat(tree.get("/static/*path"), is("static"));
+        assertThat(tree.get("/users/:name"), nullValue());
+        assertThat(tree.get("/users"), nullValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicate_pattern() {
+        new RouteTree<String>().add("/users/:id", "a").add("/users/:id", "b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void conflicting_param_names() {
+        new RouteTree<String>().add("/users/:id", "a").add("/users/:name/posts", "b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void catch_all_not_at_end() {
+        new RouteTree<String>().add("/static/*path/more", "a");
+    }
+
+    @Test
+    public void many_routes() {
+        RouteTree<Integer> tree = new RouteTree<>();
+        for (int i = 0; i < 10000; i++) {
+            tree.add("/api/v1/resource" + i + "/:id", i);
+        }
+        for (int i = 0; i < 10000; i += 997) {
+            RouteTree.Match<Integer> match = tree.match("/api/v1/resource" + i + "/x");
+            assertThat(match.value(), is(i));
+            assertThat(match.params(), hasEntry("id", "x"));
+        }
+    }
+
+}
@@ -17,20 +17,32 @@ package org.atmosphere.vibe.platform.test;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.either;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.ServerSocket;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPOutputStream;
 
 import org.atmosphere.vibe.platform.action.Action;
+import org.atmosphere.vibe.platform.action.PlatformMetrics;
+import org.atmosphere.vibe.platform.action.SimplePlatformMetrics;
 import org.atmosphere.vibe.platform.action.VoidAction;
+import org.atmosphere.vibe.platform.http.EventStream;
+import org.atmosphere.vibe.platform.http.HttpCompression;
+import org.atmosphere.vibe.platform.http.HttpHeaders;
 import org.atmosphere.vibe.platform.http.HttpStatus;
+import org.atmosphere.vibe.platform.http.LongPollParking;
 import org.atmosphere.vibe.platform.http.ServerHttpExchange;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.Request;
@@ -101,6 +113,24 @@ public abstract class ServerHttpExchangeTest {
         .send("/test?hello=there");
     }
 
+    @Test
+    public void path_and_params() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                assertThat(http.path(), is("/test"));
+                assertThat(http.params().keySet(), contains("a", "b c", "d"));
+                assertThat(http.params().get("a"), contains("1", "2"));
+                assertThat(http.param("b c"), is("x&y"));
+                assertThat(http.param("d"), is(""));
+                assertThat(http.param("e"), nullValue());
+                assertThat(http.params(), sameInstance(http.params()));
+                performer.start();
+            }
+        })
+        .send("/test?a=1&b+c=x%26y&a=2&d");
+    }
+
     @Test
     public void method() {
         performer.onserver(new Action<ServerHttpExchange>() {
@@ -141,6 +171,50 @@ public abstract class ServerHttpExchangeTest {
         .send();
     }
 
+    @Test
+    public void headers() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                HttpHeaders headers = http.headers();
+                assertThat(headers.names().contains("x-vibe"), is(true));
+                assertThat(headers.names().contains("X-VIBE"), is(true));
+                assertThat(headers.get("x-Vibe"), is("V1"));
+                assertThat(headers.getAll("X-Vibe"), contains("V1", "V2"));
+                assertThat(headers.get("x-none"), nullValue());
+                assertThat(headers.getAll("x-none").isEmpty(), is(true));
+                assertThat(http.headers(), sameInstance(headers));
+                performer.start();
+            }
+        })
+        .requestListener(new Request.Listener.Adapter() {
+            @Override
+            public void onBegin(Request request) {
+                request.header("X-Vibe", "V1").header("X-Vibe", "V2");
+            }
+        })
+        .send();
+    }
+
+    @Test
+    public void mediaType_and_charset() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                assertThat(http.mediaType(), is("text/plain"));
+                assertThat(http.charset(), is("utf-8"));
+                performer.start();
+            }
+        })
+        .requestListener(new Request.Listener.Adapter() {
+            @Override
+            public void onBegin(Request request) {
+                request.header("content-type", "Text/Plain; charset=\"utf-8\"; format=flowed");
+            }
+        })
+        .send();
+    }
+
     @Test
     public void read_text() {
         performer.onserver(new Action<ServerHttpExchange>() {
@@ -348,6 +422,66 @@ public abstract class ServerHttpExchangeTest {
         .send();
     }
 
+    @Test
+    public void onbody_with_gzip() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                http.onbody(new Action<String>() {
+                    @Override
+                    public void on(String data) {
+                        assertThat(data, is("A Breath Clad In Happiness"));
+                        performer.start();
+                    }
+                })
+                .read();
+            }
+        })
+        .requestListener(new Request.Listener.Adapter() {
+            @Override
+            public void onBegin(Request request) {
+                request.method(HttpMethod.POST).header("content-encoding", "gzip")
+                .content(new BytesContentProvider(gzip("A Breath Clad In Happiness".getBytes())), "text/plain; charset=utf-8");
+            }
+        })
+        .send();
+    }
+
+    @Test
+    public void setMaxDecompressedSize() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                http.setMaxDecompressedSize(1024)
+                .onerror(new Action<Throwable>() {
+                    @Override
+                    public void on(Throwable throwable) {
+                        performer.start();
+                    }
+                })
+                .read();
+            }
+        })
+        .requestListener(new Request.Listener.Adapter() {
+            @Override
+            public void onBegin(Request request) {
+                request.method(HttpMethod.POST).header("content-encoding", "gzip")
+                .content(new BytesContentProvider(gzip(new byte[64 * 1024])), "application/octet-stream");
+            }
+        })
+        .send();
+    }
+
+    static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+
     @Test
     public void setStatus() {
         performer.onserver(new Action<ServerHttpExchange>() {
@@ -504,6 +638,208 @@ public abstract class ServerHttpExchangeTest {
         .send();
     }
 
+    @Test
+    public void eventStream() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                EventStream stream = new EventStream(http, new EventStream.Options().batchSize(1024));
+                stream.send("1", "greeting", "Hello").send("A\nB\r\nC").retry(1000);
+                stream.close();
+            }
+        })
+        .responseListener(new Response.Listener.Adapter() {
+            StringBuilder body = new StringBuilder();
+
+            @Override
+            public void onContent(Response response, ByteBuffer content) {
+                body.append(Charset.forName("UTF-8").decode(content));
+            }
+
+            @Override
+            public void onSuccess(Response response) {
+                assertThat(response.getHeaders().get("content-type"), startsWith("text/event-stream"));
+                assertThat(response.getHeaders().get("cache-control"), is("no-cache"));
+                assertThat(body.toString(), is("id: 1\nevent: greeting\ndata: Hello\n\ndata: A\ndata: B\ndata: C\n\nretry: 1000\n\n"));
+                performer.start();
+            }
+        })
+        .send();
+    }
+
+    @Test
+    public void eventStream_heartbeat() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                final EventStream stream = new EventStream(http, new EventStream.Options().heartbeat(50));
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        stream.send("Hello").close();
+                    }
+                })
+                .start();
+            }
+        })
+        .responseListener(new Response.Listener.Adapter() {
+            StringBuilder body = new StringBuilder();
+
+            @Override
+            public void onContent(Response response, ByteBuffer content) {
+                body.append(Charset.forName("UTF-8").decode(content));
+            }
+
+            @Override
+            public void onSuccess(Response response) {
+                assertThat(body.toString(), startsWith(":\n\n"));
+                assertThat(body.toString(), endsWith("data: Hello\n\n"));
+                performer.start();
+            }
+        })
+        .send();
+    }
+
+    @Test
+    public void longPollParking() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                new LongPollParking().timeout(100).onexpire(new Action<ServerHttpExchange>() {
+                    @Override
+                    public void on(ServerHttpExchange http) {
+                        http.end("expired");
+                    }
+                })
+                .park(http);
+            }
+        })
+        .responseListener(new Response.Listener.Adapter() {
+            StringBuilder body = new StringBuilder();
+
+            @Override
+            public void onContent(Response response, ByteBuffer content) {
+                body.append(Charset.forName("ISO-8859-1").decode(content));
+            }
+
+            @Override
+            public void onSuccess(Response response) {
+                assertThat(body.toString(), is("expired"));
+                performer.start();
+            }
+        })
+        .send();
+    }
+
+    @Test
+    public void longPollParking_unpark() {
+        final LongPollParking parking = new LongPollParking().timeout(200).onexpire(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                http.end("expired");
+            }
+        });
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                final LongPollParking.Parked parked = parking.park(http);
+                assertThat(parking.size(), is(1L));
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (parked.unpark()) {
+                            parked.exchange().end("data");
+                        }
+                    }
+                })
+                .start();
+            }
+        })
+        .responseListener(new Response.Listener.Adapter() {
+            StringBuilder body = new StringBuilder();
+
+            @Override
+            public void onContent(Response response, ByteBuffer content) {
+                body.append(Charset.forName("ISO-8859-1").decode(content));
+            }
+
+            @Override
+            public void onSuccess(Response response) {
+                assertThat(body.toString(), is("data"));
+                assertThat(parking.size(), is(0L));
+                performer.start();
+            }
+        })
+        .send();
+    }
+
+    @Test
+    public void setCompression() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                // The vary header set by the application is kept
+                http.setHeader("vary", "origin")
+                .setCompression(new HttpCompression())
+                .write("A Will Remains ")
+                .end("in the Ashes")
+                .onfinish(new VoidAction() {
+                    @Override
+                    public void on() {
+                        latch.countDown();
+                    }
+                });
+            }
+        })
+        .responseListener(new Response.Listener.Adapter() {
+            StringBuilder body = new StringBuilder();
+
+            @Override
+            public void onContent(Response response, ByteBuffer content) {
+                body.append(Charset.forName("ISO-8859-1").decode(content));
+            }
+
+            @Override
+            public void onSuccess(Response response) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                // Jetty client accepts gzip by default
+                assertThat(response.getHeaders().get("content-encoding"), is("gzip"));
+                assertThat(response.getHeaders().get("vary"), is("origin, accept-encoding"));
+                assertThat(body.toString(), is("A Will Remains in the Ashes"));
+                performer.start();
+            }
+        })
+        .send();
+    }
+
+    @Test
+    public void setCompression_threshold() {
+        performer.onserver(new Action<ServerHttpExchange>() {
+            @Override
+            public void on(ServerHttpExchange http) {
+                http.setCompression(new HttpCompression().threshold(64)).end("A Will Remains in the Ashes");
+            }
+        })
+        .responseListener(new Response.Listener.Adapter() {
+            @Override
+            public void onSuccess(Response response) {
+                assertThat(response.getHeaders().get("content-encoding"), nullValue());
+                performer.start();
+            }
+        })
+        .send();
+    }
+
     @Test
     public void end() {
         performer.onserver(new Action<ServerHttpExchange>() {
@@ -543,6 +879,86 @@ public abstract class ServerHttpExchangeTest {
         .send();
     }
 
+    @Test
+    public void metrics() {
+        final SimplePlatformMetrics metrics = new SimplePlatformMetrics();
+        final long[] snapshot = new long[6];
+        PlatformMetrics.install(metrics);
+        try {
+            performer.onserver(new Action<ServerHttpExchange>() {
+                @Override
+                public void on(final ServerHttpExchange http) {
+                    http.onchunk(new Action<String>() {
+                        @Override
+                        public void on(String data) {
+                        }
+                    })
+                    .onend(new VoidAction() {
+                        @Override
+                        public void on() {
+                            // The whole body is written with content-length
+                            http.end("pong!");
+                        }
+                    })
+                    .onfinish(new VoidAction() {
+                        @Override
+                        public void on() {
+                            snapshot(metrics, snapshot);
+                            performer.start();
+                        }
+                    })
+                    .read();
+                }
+            })
+            .requestListener(new Request.Listener.Adapter() {
+                @Override
+                public void onBegin(Request request) {
+                    request.method(HttpMethod.POST).content(new StringContentProvider("ping"), "text/plain; charset=utf-8");
+                }
+            })
+            .send();
+        } finally {
+            PlatformMetrics.install(null);
+        }
+        assertThat(snapshot, is(new long[] { 1, 0, 4, 5, 1, 1 }));
+    }
+
+    @Test
+    public void metrics_chunked() {
+        final SimplePlatformMetrics metrics = new SimplePlatformMetrics();
+        final long[] snapshot = new long[6];
+        PlatformMetrics.install(metrics);
+        try {
+            performer.onserver(new Action<ServerHttpExchange>() {
+                @Override
+                public void on(ServerHttpExchange http) {
+                    // The body is written in chunks
+                    http.write("pong").write("!").end()
+                    .onfinish(new VoidAction() {
+                        @Override
+                        public void on() {
+                            snapshot(metrics, snapshot);
+                            performer.start();
+                        }
+                    });
+                }
+            })
+            .send();
+        } finally {
+            PlatformMetrics.install(null);
+        }
+        assertThat(snapshot, is(new long[] { 1, 0, 0, 5, 1, 1 }));
+    }
+
+    private static void snapshot(SimplePlatformMetrics metrics, long[] snapshot) {
+        snapshot[0] = metrics.exchanges();
+        snapshot[1] = metrics.activeExchanges();
+        snapshot[2] = metrics.bytesRead();
+        snapshot[3] = metrics.bytesWritten();
+        snapshot[4] = metrics.timeToFirstByte().count();
+        snapshot[5] = metrics.exchangeDuration().count();
+    }
+
     // TODO
     // Now errorAction depends on the underlying platform so that it's not easy
     // to test. However, with the consistent exception hierarchy, it might be
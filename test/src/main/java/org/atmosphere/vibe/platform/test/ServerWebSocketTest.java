@@ -18,13 +18,21 @@ package org.atmosphere.vibe.platform.test;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 
 import org.atmosphere.vibe.platform.action.Action;
+import org.atmosphere.vibe.platform.action.PlatformMetrics;
+import org.atmosphere.vibe.platform.action.SimplePlatformMetrics;
 import org.atmosphere.vibe.platform.action.VoidAction;
+import org.atmosphere.vibe.platform.websocket.Fragment;
 import org.atmosphere.vibe.platform.websocket.ServerWebSocket;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketAdapter;
@@ -163,6 +171,27 @@ public abstract class ServerWebSocketTest {
         .connect();
     }
 
+    @Test
+    public void send_binary_slice() {
+        performer.clientListener(new WebSocketAdapter() {
+            @Override
+            public void onWebSocketBinary(byte[] payload, int offset, int len) {
+                assertThat(Arrays.copyOfRange(payload, offset, offset + len), is(new byte[] { 0x00, 0x01, 0x02, 0x03 }));
+                performer.start();
+            }
+        })
+        .onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                // Only the remaining bytes of a buffer should be sent
+                byte[] bytes = new byte[] { 0x7f, 0x00, 0x01, 0x02, 0x03, 0x7f };
+                ws.send(ByteBuffer.wrap(bytes, 1, 2), false)
+                .send(ByteBuffer.wrap(bytes, 3, 2).slice(), true);
+            }
+        })
+        .connect();
+    }
+
     @Test
     public void send_text_and_binary() {
         performer.clientListener(new WebSocketAdapter() {
@@ -321,6 +350,140 @@ public abstract class ServerWebSocketTest {
         .connect();
     }
 
+    @Test
+    public void send_fragments() {
+        performer.clientListener(new WebSocketAdapter() {
+            @Override
+            public void onWebSocketBinary(byte[] payload, int offset, int len) {
+                assertThat(Arrays.copyOfRange(payload, offset, offset + len), is(new byte[] { 0x00, 0x01, 0x02, 0x03 }));
+                performer.start();
+            }
+        })
+        .onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                ws.send(ByteBuffer.wrap(new byte[] { 0x00, 0x01 }), false)
+                .send(ByteBuffer.wrap(new byte[] { 0x02 }), false)
+                .send(ByteBuffer.wrap(new byte[] { 0x03 }), true);
+            }
+        })
+        .connect();
+    }
+
+    @Test
+    public void onbinaryfragment() {
+        performer.clientListener(new WebSocketAdapter() {
+            @Override
+            public void onWebSocketConnect(Session sess) {
+                sendFragments(sess);
+            }
+        })
+        .onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                ws.onbinaryfragment(new Action<Fragment>() {
+                    ByteBuffer message = ByteBuffer.allocate(4);
+                    @Override
+                    public void on(Fragment fragment) {
+                        message.put(fragment.data());
+                        if (fragment.last()) {
+                            assertThat(message.array(), is(new byte[] { 0x00, 0x01, 0x02, 0x03 }));
+                            performer.start();
+                        }
+                    }
+                });
+            }
+        })
+        .connect();
+    }
+
+    @Test
+    public void onbinary_fragmented() {
+        performer.clientListener(new WebSocketAdapter() {
+            @Override
+            public void onWebSocketConnect(Session sess) {
+                sendFragments(sess);
+            }
+        })
+        .onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                ws.onbinary(new Action<ByteBuffer>() {
+                    @Override
+                    public void on(ByteBuffer data) {
+                        assertThat(data, is(ByteBuffer.wrap(new byte[] { 0x00, 0x01, 0x02, 0x03 })));
+                        performer.start();
+                    }
+                });
+            }
+        })
+        .connect();
+    }
+
+    private static void sendFragments(Session sess) {
+        try {
+            sess.getRemote().sendPartialBytes(ByteBuffer.wrap(new byte[] { 0x00, 0x01 }), false);
+            sess.getRemote().sendPartialBytes(ByteBuffer.wrap(new byte[] { 0x02 }), false);
+            sess.getRemote().sendPartialBytes(ByteBuffer.wrap(new byte[] { 0x03 }), true);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void setMaxMessageSize_text() {
+        performer.clientListener(new WebSocketAdapter() {
+            @Override
+            public void onWebSocketConnect(Session sess) {
+                sess.getRemote().sendStringByFuture("A road of winds the water builds");
+            }
+            @Override
+            public void onWebSocketClose(int statusCode, String reason) {
+                assertThat(statusCode, is(1009));
+                performer.start();
+            }
+        })
+        .onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                ws.setMaxMessageSize(8).ontext(new Action<String>() {
+                    @Override
+                    public void on(String data) {
+                        assertThat(true, is(false));
+                    }
+                });
+            }
+        })
+        .connect();
+    }
+
+    @Test
+    public void setMaxMessageSize_binary() {
+        performer.clientListener(new WebSocketAdapter() {
+            @Override
+            public void onWebSocketConnect(Session sess) {
+                sendFragments(sess);
+            }
+            @Override
+            public void onWebSocketClose(int statusCode, String reason) {
+                assertThat(statusCode, is(1009));
+                performer.start();
+            }
+        })
+        .onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                ws.setMaxMessageSize(2).onbinary(new Action<ByteBuffer>() {
+                    @Override
+                    public void on(ByteBuffer data) {
+                        assertThat(true, is(false));
+                    }
+                });
+            }
+        })
+        .connect();
+    }
+
     @Test
     public void onclose_by_server() {
         performer.onserver(new Action<ServerWebSocket>() {
@@ -360,6 +523,147 @@ public abstract class ServerWebSocketTest {
         .connect();
     }
 
+    @Test
+    public void ping_pong() {
+        performer.onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                ws.onpong(new Action<ByteBuffer>() {
+                    @Override
+                    public void on(ByteBuffer data) {
+                        assertThat(data, is(ByteBuffer.wrap(new byte[] { 0x00, 0x01, 0x02 })));
+                        performer.start();
+                    }
+                })
+                .ping(ByteBuffer.wrap(new byte[] { 0x00, 0x01, 0x02 }));
+            }
+        })
+        .connect();
+    }
+
+    @Test
+    public void setIdleTimeout() {
+        performer.onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(ServerWebSocket ws) {
+                // A ping is sent when half of the timeout has passed and the
+                // client's pong keeps the connection alive
+                ws.onpong(new Action<ByteBuffer>() {
+                    @Override
+                    public void on(ByteBuffer data) {
+                        performer.start();
+                    }
+                })
+                .setIdleTimeout(600);
+            }
+        })
+        .connect();
+    }
+
+    @Test
+    public void concurrent_sessions() throws Exception {
+        // Events of each session should be dispatched to its own socket even
+        // if the platform serves sessions with a shared instance
+        final int n = 200;
+        final Set<ServerWebSocket> opened = Collections.newSetFromMap(new ConcurrentHashMap<ServerWebSocket, Boolean>());
+        final CountDownLatch echoed = new CountDownLatch(n);
+        final CountDownLatch closed = new CountDownLatch(n);
+        performer.onserver(new Action<ServerWebSocket>() {
+            @Override
+            public void on(final ServerWebSocket ws) {
+                opened.add(ws);
+                ws.ontext(new Action<String>() {
+                    @Override
+                    public void on(String data) {
+                        ws.send(data);
+                    }
+                })
+                .onclose(new VoidAction() {
+                    @Override
+                    public void on() {
+                        if (opened.remove(ws)) {
+                            closed.countDown();
+                        }
+                    }
+                });
+            }
+        });
+        WebSocketClient client = new WebSocketClient();
+        client.start();
+        try {
+            for (int i = 0; i < n; i++) {
+                final String id = Integer.toString(i);
+                client.connect(new WebSocketAdapter() {
+                    @Override
+                    public void onWebSocketConnect(Session session) {
+                        super.onWebSocketConnect(session);
+                        session.getRemote().sendStringByFuture(id);
+                    }
+
+                    @Override
+                    public void onWebSocketText(String message) {
+                        if (message.equals(id)) {
+                            echoed.countDown();
+                            getSession().close();
+                        }
+                    }
+                }, URI.create("ws://localhost:" + port + "/test"));
+            }
+            echoed.await();
+            closed.await();
+        } finally {
+            client.stop();
+        }
+    }
+
+    @Test
+    public void metrics() {
+        final SimplePlatformMetrics metrics = new SimplePlatformMetrics();
+        final long[] snapshot = new long[6];
+        PlatformMetrics.install(metrics);
+        try {
+            performer.clientListener(new WebSocketAdapter() {
+                @Override
+                public void onWebSocketConnect(Session sess) {
+                    super.onWebSocketConnect(sess);
+                    sess.getRemote().sendStringByFuture("ping");
+                }
+
+                @Override
+                public void onWebSocketText(String message) {
+                    getSession().close();
+                }
+            })
+            .onserver(new Action<ServerWebSocket>() {
+                @Override
+                public void on(final ServerWebSocket ws) {
+                    ws.ontext(new Action<String>() {
+                        @Override
+                        public void on(String data) {
+                            ws.send("pong!");
+                        }
+                    })
+                    .onclose(new VoidAction() {
+                        @Override
+                        public void on() {
+                            snapshot[0] = metrics.sockets();
+                            snapshot[1] = metrics.activeSockets();
+                            snapshot[2] = metrics.framesReceived();
+                            snapshot[3] = metrics.frameBytesReceived();
+                            snapshot[4] = metrics.framesSent();
+                            snapshot[5] = metrics.frameBytesSent();
+                            performer.start();
+                        }
+                    });
+                }
+            })
+            .connect();
+        } finally {
+            PlatformMetrics.install(null);
+        }
+        assertThat(snapshot, is(new long[] { 1, 0, 1, 4, 1, 5 }));
+    }
+
     // TODO
     // Now errorAction depends on the underlying platform so that it's not easy
     // to test. However, with the consistent exception hierarchy, it might be
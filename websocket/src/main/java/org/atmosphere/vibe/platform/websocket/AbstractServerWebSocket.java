@@ -16,10 +16,15 @@
 package org.atmosphere.vibe.platform.websocket;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
 
 import org.atmosphere.vibe.platform.action.Action;
 import org.atmosphere.vibe.platform.action.Actions;
+import org.atmosphere.vibe.platform.action.PlatformMetrics;
 import org.atmosphere.vibe.platform.action.SimpleActions;
+import org.atmosphere.vibe.platform.action.TimerWheel;
+import org.atmosphere.vibe.platform.action.VoidAction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,17 +37,65 @@ public abstract class AbstractServerWebSocket implements ServerWebSocket {
 
     protected final Actions<String> textActions = new SimpleActions<>();
     protected final Actions<ByteBuffer> binaryActions = new SimpleActions<>();
+    protected final Actions<Fragment> binaryFragmentActions = new SimpleActions<>();
+    protected final Actions<ByteBuffer> pongActions = new SimpleActions<>();
     protected final Actions<Throwable> errorActions = new SimpleActions<>();
     protected final Actions<Void> closeActions = new SimpleActions<>(new Actions.Options().once(true).memory(true));
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Message Too Big
+    private static final int TOO_BIG = 1009;
+
     private final Logger logger = LoggerFactory.getLogger(AbstractServerWebSocket.class);
-    private State state = State.OPEN;
+    private final PlatformMetrics metrics = PlatformMetrics.current();
+    private volatile State state = State.OPEN;
+    private volatile long lastReceived = System.nanoTime();
+    private volatile boolean pinged;
+    private long idleTimeout;
+    private TimerWheel.Timeout idleTimer;
+    // Fragmented messages are assembled only if someone wants a whole one
+    private volatile boolean wholeBinary;
+    private volatile long maxMessageSize;
+    private boolean binaryFragmented;
+    private long binaryMessageSize;
+    private ByteBuffer binaryMessage;
+    private boolean textFragmented;
+    private long textMessageSize;
+    private ByteBuffer textMessage;
+    private ByteBuffer sendingMessage;
 
     public AbstractServerWebSocket() {
+        metrics.socketOpened();
+        // Any frame from the client proves that the connection is alive
+        textActions.add(new Action<String>() {
+            @Override
+            public void on(String data) {
+                received();
+            }
+        });
+        binaryActions.add(new Action<ByteBuffer>() {
+            @Override
+            public void on(ByteBuffer data) {
+                received();
+            }
+        });
+        binaryFragmentActions.add(new Action<Fragment>() {
+            @Override
+            public void on(Fragment fragment) {
+                received();
+            }
+        });
+        pongActions.add(new Action<ByteBuffer>() {
+            @Override
+            public void on(ByteBuffer data) {
+                received();
+            }
+        });
         errorActions.add(new Action<Throwable>() {
             @Override
             public void on(Throwable throwable) {
                 logger.trace("{} has received a throwable {}", AbstractServerWebSocket.this, throwable);
+                metrics.socketError();
             }
         });
         closeActions.add(new Action<Void>() {
@@ -50,6 +103,8 @@ public abstract class AbstractServerWebSocket implements ServerWebSocket {
             public void on(Void _) {
                 state = State.CLOSED;
                 logger.trace("{} has been closed", AbstractServerWebSocket.this);
+                metrics.socketClosed();
+                cancelIdleTimer();
             }
         });
     }
@@ -65,9 +120,32 @@ public abstract class AbstractServerWebSocket implements ServerWebSocket {
 
     protected abstract void doClose();
 
+    /**
+     * Closes the connection with the given status code and reason.
+     */
+    protected void close(int code, String reason) {
+        logger.trace("{} has started to close the connection with {} {}", this, code, reason);
+        if (state != State.CLOSING && state != State.CLOSED) {
+            state = State.CLOSING;
+            doClose(code, reason);
+        }
+    }
+
+    /**
+     * Closes the connection sending the given status code and reason. By
+     * default, they are ignored and {@link AbstractServerWebSocket#doClose()}
+     * is called.
+     */
+    protected void doClose(int code, String reason) {
+        doClose();
+    }
+
     @Override
     public ServerWebSocket send(String data) {
         logger.trace("{} sends a text message {}", this, data);
+        if (metrics.enabled()) {
+            metrics.frameSent(utf8Length(data));
+        }
         doSend(data);
         return this;
     }
@@ -77,6 +155,7 @@ public abstract class AbstractServerWebSocket implements ServerWebSocket {
         if (logger.isTraceEnabled() && byteBuffer.hasArray()) {
             logger.trace("{} sends a text message {}", this, new String(byteBuffer.array()));
         }
+        metrics.frameSent(byteBuffer.remaining());
         doSend(byteBuffer);
         return this;
     }
@@ -85,6 +164,262 @@ public abstract class AbstractServerWebSocket implements ServerWebSocket {
 
     protected abstract void doSend(String data);
 
+    @Override
+    public ServerWebSocket send(ByteBuffer fragment, boolean last) {
+        logger.trace("{} sends a binary fragment of {} bytes, last: {}", this, fragment.remaining(), last);
+        metrics.frameSent(fragment.remaining());
+        doSend(fragment, last);
+        return this;
+    }
+
+    /**
+     * Sends a fragment of a binary message. By default, fragments are
+     * buffered and the whole message is sent by
+     * {@link AbstractServerWebSocket#doSend(ByteBuffer)} with the last one.
+     * Platforms which can write fragments should override it.
+     */
+    protected void doSend(ByteBuffer fragment, boolean last) {
+        if (sendingMessage == null && last) {
+            doSend(fragment);
+            return;
+        }
+        sendingMessage = append(sendingMessage, fragment);
+        if (last) {
+            ByteBuffer message = sendingMessage;
+            sendingMessage = null;
+            message.flip();
+            doSend(message);
+        }
+    }
+
+    /**
+     * Dispatches a fragment of a binary message received by the platform. A
+     * message which is not fragmented should be passed with {@code last} set
+     * to true so that it's dispatched without being copied.
+     */
+    protected void handleBinaryFragment(ByteBuffer data, boolean last) {
+        metrics.frameReceived(data.remaining());
+        if (!binaryFragmented) {
+            binaryMessageSize = 0;
+        }
+        binaryMessageSize += data.remaining();
+        if (exceedsMaxMessageSize(binaryMessageSize)) {
+            // Discards the rest of the message
+            binaryFragmented = !last;
+            binaryMessage = null;
+            return;
+        }
+        binaryFragmentActions.fire(new Fragment(data.duplicate(), last));
+        if (!binaryFragmented) {
+            if (last) {
+                binaryActions.fire(data);
+                return;
+            }
+            binaryFragmented = true;
+            binaryMessage = wholeBinary ? ByteBuffer.allocate(Math.max(data.remaining() * 2, 1024)) : null;
+        }
+        if (binaryMessage != null) {
+            binaryMessage = append(binaryMessage, data);
+        }
+        if (last) {
+            ByteBuffer message = binaryMessage;
+            binaryFragmented = false;
+            binaryMessage = null;
+            if (message != null) {
+                message.flip();
+                binaryActions.fire(message);
+            }
+        }
+    }
+
+    /**
+     * Dispatches a fragment of a text message received by the platform as
+     * UTF-8 encoded bytes. Text fragments are always assembled as a
+     * character may be split across fragments.
+     */
+    protected void handleTextFragment(ByteBuffer data, boolean last) {
+        metrics.frameReceived(data.remaining());
+        if (!textFragmented) {
+            textMessageSize = 0;
+        }
+        textMessageSize += data.remaining();
+        if (exceedsMaxMessageSize(textMessageSize)) {
+            textFragmented = !last;
+            textMessage = null;
+            return;
+        }
+        if (!textFragmented && last) {
+            textActions.fire(UTF_8.decode(data).toString());
+            return;
+        }
+        textFragmented = !last;
+        textMessage = append(textMessage, data);
+        if (last) {
+            ByteBuffer message = textMessage;
+            textMessage = null;
+            message.flip();
+            textActions.fire(UTF_8.decode(message).toString());
+        }
+    }
+
+    /**
+     * Dispatches a text message decoded by the platform.
+     */
+    protected void handleText(String data) {
+        if (metrics.enabled()) {
+            metrics.frameReceived(utf8Length(data));
+        }
+        long max = maxMessageSize;
+        // A character takes up to 3 bytes in UTF-8
+        if (max > 0 && data.length() > max / 3 && exceedsMaxMessageSize(utf8Length(data))) {
+            return;
+        }
+        textActions.fire(data);
+    }
+
+    /**
+     * The max size of a message in bytes, or 0 if there's no limit.
+     */
+    protected long maxMessageSize() {
+        return maxMessageSize;
+    }
+
+    /**
+     * Returns true and closes the connection with status code 1009 if the
+     * given size of a message exceeds the max message size.
+     */
+    protected boolean exceedsMaxMessageSize(long size) {
+        long max = maxMessageSize;
+        if (max > 0 && size > max) {
+            logger.trace("{} has received a message larger than {} bytes", this, max);
+            close(TOO_BIG, "Message too big");
+            return true;
+        }
+        return false;
+    }
+
+    private static long utf8Length(String data) {
+        long length = 0;
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    // Grows the buffer by doubling its capacity
+    private static ByteBuffer append(ByteBuffer buffer, ByteBuffer data) {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(Math.max(data.remaining() * 2, 1024));
+        } else if (buffer.remaining() < data.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + data.remaining()));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        buffer.put(data.duplicate());
+        return buffer;
+    }
+
+    @Override
+    public ServerWebSocket ping(ByteBuffer data) {
+        if (data.remaining() > 125) {
+            throw new IllegalArgumentException("Ping data must not be longer than 125 bytes");
+        }
+        logger.trace("{} sends a ping", this);
+        doPing(data);
+        return this;
+    }
+
+    /**
+     * Sends a ping frame. If the platform doesn't support it, it should throw
+     * {@link UnsupportedOperationException}.
+     */
+    protected abstract void doPing(ByteBuffer data);
+
+    @Override
+    public synchronized ServerWebSocket setIdleTimeout(long idleTimeout) {
+        cancelIdleTimer();
+        this.idleTimeout = idleTimeout;
+        if (idleTimeout > 0 && state != State.CLOSED) {
+            received();
+            scheduleIdleTimer(TimeUnit.MILLISECONDS.toNanos(idleTimeout) / 2);
+        }
+        return this;
+    }
+
+    @Override
+    public ServerWebSocket setMaxMessageSize(long maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+        return this;
+    }
+
+    private void received() {
+        lastReceived = System.nanoTime();
+        pinged = false;
+    }
+
+    private void scheduleIdleTimer(long delay) {
+        idleTimer = TimerWheel.shared().schedule(delay, TimeUnit.NANOSECONDS, new VoidAction() {
+            @Override
+            public void on() {
+                checkIdle();
+            }
+        });
+    }
+
+    // Executed by the timer wheel. Instead of rescheduling on every frame, the
+    // timer checks when the last frame was received and sleeps again. The
+    // socket is pinged or closed outside the lock as the platform may fire
+    // events on another thread synchronously
+    private void checkIdle() {
+        boolean expired = false;
+        boolean ping = false;
+        synchronized (this) {
+            if (idleTimeout <= 0 || state == State.CLOSED) {
+                return;
+            }
+            long timeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+            long idle = System.nanoTime() - lastReceived;
+            if (idle >= timeout) {
+                logger.trace("{} has been idle for {}ms", this, TimeUnit.NANOSECONDS.toMillis(idle));
+                idleTimer = null;
+                expired = true;
+            } else {
+                if (idle >= timeout / 2 && !pinged) {
+                    pinged = true;
+                    ping = true;
+                }
+                scheduleIdleTimer(idle < timeout / 2 ? timeout / 2 - idle : timeout - idle);
+            }
+        }
+        if (expired) {
+            close();
+        } else if (ping) {
+            try {
+                ping(ByteBuffer.allocate(0));
+            } catch (UnsupportedOperationException e) {
+                logger.trace("{} can't send a ping", this);
+            }
+        }
+    }
+
+    private synchronized void cancelIdleTimer() {
+        if (idleTimer != null) {
+            idleTimer.cancel();
+            idleTimer = null;
+        }
+    }
+
     @Override
     public ServerWebSocket ontext(Action<String> action) {
         textActions.add(action);
@@ -93,10 +428,23 @@ public abstract class AbstractServerWebSocket implements ServerWebSocket {
 
     @Override
     public ServerWebSocket onbinary(Action<ByteBuffer> action) {
+        wholeBinary = true;
         binaryActions.add(action);
         return this;
     }
 
+    @Override
+    public ServerWebSocket onbinaryfragment(Action<Fragment> action) {
+        binaryFragmentActions.add(action);
+        return this;
+    }
+
+    @Override
+    public ServerWebSocket onpong(Action<ByteBuffer> action) {
+        pongActions.add(action);
+        return this;
+    }
+
     @Override
     public ServerWebSocket onclose(Action<Void> action) {
         closeActions.add(action);
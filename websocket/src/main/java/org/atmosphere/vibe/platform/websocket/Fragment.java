@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fragment of a binary message passed to
+ * {@link ServerWebSocket#onbinaryfragment(org.atmosphere.vibe.platform.action.Action)}.
+ * The data may be backed by a buffer of the platform that is reused once the
+ * action returns, so it should be consumed or copied within the action.
+ */
+public class Fragment {
+
+    private final ByteBuffer data;
+    private final boolean last;
+
+    public Fragment(ByteBuffer data, boolean last) {
+        this.data = data;
+        this.last = last;
+    }
+
+    /**
+     * The data of this fragment.
+     */
+    public ByteBuffer data() {
+        return data;
+    }
+
+    /**
+     * Whether this fragment completes the message.
+     */
+    public boolean last() {
+        return last;
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.websocket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Options for the WebSocket per-message compression extension,
+ * {@code permessage-deflate}. A bridge configured with an instance negotiates
+ * the extension with a client offering it and compresses messages through
+ * {@link PerMessageDeflateCodec} or the platform's own implementation.
+ * <p>
+ * Note that {@link Deflater} always uses the 15-bit window so that an offer
+ * restricting {@code server_max_window_bits} is declined.
+ *
+ * @see <a href="http://tools.ietf.org/html/rfc7692">RFC7692 - Compression
+ *      Extensions for WebSocket</a>
+ */
+public class PerMessageDeflate {
+
+    /**
+     * The name of the extension.
+     */
+    public static final String NAME = "permessage-deflate";
+
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+    private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+    private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+    private int clientMaxWindowBits = 15;
+    private boolean serverNoContextTakeover;
+    private boolean clientNoContextTakeover;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int threshold = 64;
+    private long maxDecompressedSize = 16 * 1024 * 1024;
+
+    public int clientMaxWindowBits() {
+        return clientMaxWindowBits;
+    }
+
+    /**
+     * Limits the LZ77 sliding window size the client uses to compress
+     * messages if the client supports it. The value must be between 8 and 15.
+     * The default value is 15.
+     */
+    public PerMessageDeflate clientMaxWindowBits(int clientMaxWindowBits) {
+        if (clientMaxWindowBits < 8 || clientMaxWindowBits > 15) {
+            throw new IllegalArgumentException("Window bits must be between 8 and 15");
+        }
+        this.clientMaxWindowBits = clientMaxWindowBits;
+        return this;
+    }
+
+    public boolean serverNoContextTakeover() {
+        return serverNoContextTakeover;
+    }
+
+    /**
+     * Resets the compression context of the server after each message. It
+     * saves memory per connection at the cost of compression ratio. The
+     * default value is false.
+     */
+    public PerMessageDeflate serverNoContextTakeover(boolean serverNoContextTakeover) {
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        return this;
+    }
+
+    public boolean clientNoContextTakeover() {
+        return clientNoContextTakeover;
+    }
+
+    /**
+     * Asks the client to reset its compression context after each message. The
+     * default value is false.
+     */
+    public PerMessageDeflate clientNoContextTakeover(boolean clientNoContextTakeover) {
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        return this;
+    }
+
+    public int compressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * The compression level of {@link Deflater}. The default value is
+     * {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public PerMessageDeflate compressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public int threshold() {
+        return threshold;
+    }
+
+    /**
+     * Messages smaller than the given size in bytes are sent uncompressed. The
+     * default value is 64.
+     */
+    public PerMessageDeflate threshold(int threshold) {
+        this.threshold = threshold;
+        return this;
+    }
+
+    public long maxDecompressedSize() {
+        return maxDecompressedSize;
+    }
+
+    /**
+     * The max size of a received message after decompression in bytes. A
+     * message inflating beyond it closes the connection with status code
+     * 1009 even if {@link ServerWebSocket#setMaxMessageSize(long)} sets no
+     * limit, as a small compressed message can inflate to a huge one. The
+     * default value is 16MB.
+     */
+    public PerMessageDeflate maxDecompressedSize(long maxDecompressedSize) {
+        this.maxDecompressedSize = maxDecompressedSize;
+        return this;
+    }
+
+    /**
+     * Negotiates the extension with the given value of
+     * {@code Sec-WebSocket-Extensions} request header. The first acceptable
+     * offer is chosen and the accepted parameters are returned in the order of
+     * the response. A parameter without value is mapped to {@code null}. If no
+     * offer is acceptable, {@code null} is returned.
+     */
+    public Map<String, String> negotiate(String extensions) {
+        if (extensions == null) {
+            return null;
+        }
+        for (String offer : extensions.split(",")) {
+            String[] tokens = offer.split(";");
+            if (!tokens[0].trim().equalsIgnoreCase(NAME)) {
+                continue;
+            }
+            Map<String, String> accepted = accept(tokens);
+            if (accepted != null) {
+                return accepted;
+            }
+        }
+        return null;
+    }
+
+    private Map<String, String> accept(String[] tokens) {
+        boolean serverNoContextTakeover = this.serverNoContextTakeover;
+        boolean clientMaxWindowBitsOffered = false;
+        int clientMaxWindowBits = this.clientMaxWindowBits;
+        for (int i = 1; i < tokens.length; i++) {
+            String token = tokens[i].trim();
+            if (token.isEmpty()) {
+                continue;
+            }
+            int idx = token.indexOf('=');
+            String name = (idx == -1 ? token : token.substring(0, idx)).trim().toLowerCase();
+            String value = idx == -1 ? null : unquote(token.substring(idx + 1).trim());
+            switch (name) {
+            case SERVER_NO_CONTEXT_TAKEOVER:
+                serverNoContextTakeover = true;
+                break;
+            case CLIENT_NO_CONTEXT_TAKEOVER:
+                // The client will reset its context anyway
+                break;
+            case SERVER_MAX_WINDOW_BITS:
+                // Deflater can't use a window smaller than 15 bits
+                if (parseWindowBits(value) != 15) {
+                    return null;
+                }
+                break;
+            case CLIENT_MAX_WINDOW_BITS:
+                clientMaxWindowBitsOffered = true;
+                if (value != null) {
+                    int bits = parseWindowBits(value);
+                    if (bits == -1) {
+                        return null;
+                    }
+                    clientMaxWindowBits = Math.min(clientMaxWindowBits, bits);
+                }
+                break;
+            default:
+                // Unknown parameter
+                return null;
+            }
+        }
+        Map<String, String> accepted = new LinkedHashMap<>();
+        if (serverNoContextTakeover) {
+            accepted.put(SERVER_NO_CONTEXT_TAKEOVER, null);
+        }
+        if (clientNoContextTakeover) {
+            accepted.put(CLIENT_NO_CONTEXT_TAKEOVER, null);
+        }
+        if (clientMaxWindowBitsOffered && clientMaxWindowBits < 15) {
+            accepted.put(CLIENT_MAX_WINDOW_BITS, Integer.toString(clientMaxWindowBits));
+        }
+        return accepted;
+    }
+
+    private static int parseWindowBits(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            int bits = Integer.parseInt(value);
+            return bits >= 8 && bits <= 15 ? bits : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String unquote(String value) {
+        return value.length() > 1 && value.startsWith("\"") && value.endsWith("\"") ? value.substring(1, value.length() - 1) : value;
+    }
+
+    /**
+     * Formats the negotiated parameters into the value of
+     * {@code Sec-WebSocket-Extensions} response header.
+     */
+    public static String format(Map<String, String> parameters) {
+        StringBuilder builder = new StringBuilder(NAME);
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            builder.append("; ").append(entry.getKey());
+            if (entry.getValue() != null) {
+                builder.append("=").append(entry.getValue());
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Creates a codec to compress and decompress messages of a connection
+     * according to the given negotiated parameters.
+     */
+    public PerMessageDeflateCodec newCodec(Map<String, String> parameters) {
+        return new PerMessageDeflateCodec(compressionLevel, threshold, maxDecompressedSize,
+            parameters.containsKey(SERVER_NO_CONTEXT_TAKEOVER),
+            parameters.containsKey(CLIENT_NO_CONTEXT_TAKEOVER));
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014 The Vibe Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atmosphere.vibe.platform.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses messages of a WebSocket connection which has
+ * negotiated {@code permessage-deflate}. It also keeps track of the number of
+ * bytes before and after compression to measure compression ratio.
+ * <p>
+ * Compression and decompression may be used by different threads but each of
+ * them should be done by a single thread at a time in the order of messages.
+ * {@link #close()} must be called when the connection is closed to release
+ * the native resources.
+ *
+ * @see PerMessageDeflate
+ */
+public class PerMessageDeflateCodec {
+
+    private static final byte[] TAIL = { 0x00, 0x00, (byte) 0xff, (byte) 0xff };
+
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater(true);
+    private final int threshold;
+    private final long maxDecompressedSize;
+    private final boolean serverNoContextTakeover;
+    private final boolean clientNoContextTakeover;
+    private final byte[] deflateBuffer = new byte[8192];
+    private final byte[] inflateBuffer = new byte[8192];
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong sentCompressedBytes = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong receivedCompressedBytes = new AtomicLong();
+
+    PerMessageDeflateCodec(int compressionLevel, int threshold, long maxDecompressedSize, boolean serverNoContextTakeover, boolean clientNoContextTakeover) {
+        this.deflater = new Deflater(compressionLevel, true);
+        this.threshold = threshold;
+        this.maxDecompressedSize = maxDecompressedSize;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+    }
+
+    /**
+     * Determines if a message of the given size in bytes should be compressed.
+     */
+    public boolean compressible(int length) {
+        return length >= threshold;
+    }
+
+    /**
+     * The max size of a received message after decompression in bytes.
+     */
+    public long maxDecompressedSize() {
+        return maxDecompressedSize;
+    }
+
+    /**
+     * Compresses the given message payload. The given buffer's position is not
+     * changed.
+     */
+    public ByteBuffer compress(ByteBuffer data) {
+        int length = data.remaining();
+        if (data.hasArray()) {
+            deflater.setInput(data.array(), data.arrayOffset() + data.position(), length);
+        } else {
+            byte[] bytes = new byte[length];
+            data.duplicate().get(bytes);
+            deflater.setInput(bytes);
+        }
+        CompressedOutput out = new CompressedOutput(Math.max(64, length / 2));
+        int bytesDeflated;
+        do {
+            bytesDeflated = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+            out.write(deflateBuffer, 0, bytesDeflated);
+        } while (bytesDeflated == deflateBuffer.length);
+        if (serverNoContextTakeover) {
+            deflater.reset();
+        }
+        // Removes 0x00 0x00 0xff 0xff at the end
+        ByteBuffer compressed = out.toByteBuffer(TAIL.length);
+        sentBytes.addAndGet(length);
+        sentCompressedBytes.addAndGet(compressed.remaining());
+        return compressed;
+    }
+
+    /**
+     * Decompresses the given message payload. The given buffer is consumed.
+     * If the decompressed message would be larger than the given size in
+     * bytes, it stops inflating and returns {@code null}. The decompression
+     * context is lost then so the connection should be closed.
+     */
+    public ByteBuffer decompress(ByteBuffer data, long maxSize) throws DataFormatException {
+        int length = data.remaining();
+        byte[] bytes;
+        if (data.hasArray()) {
+            bytes = data.array();
+            inflater.setInput(bytes, data.arrayOffset() + data.position(), length);
+        } else {
+            bytes = new byte[length];
+            data.duplicate().get(bytes);
+            inflater.setInput(bytes);
+        }
+        data.position(data.limit());
+        CompressedOutput out = new CompressedOutput((int) Math.min(Math.max(64, length * 2L), Math.max(64, maxSize)));
+        if (!inflate(out, maxSize)) {
+            inflater.reset();
+            return null;
+        }
+        inflater.setInput(TAIL);
+        if (!inflate(out, maxSize)) {
+            inflater.reset();
+            return null;
+        }
+        if (clientNoContextTakeover) {
+            inflater.reset();
+        }
+        ByteBuffer decompressed = out.toByteBuffer(0);
+        receivedCompressedBytes.addAndGet(length);
+        receivedBytes.addAndGet(decompressed.remaining());
+        return decompressed;
+    }
+
+    // Returns false as soon as the output exceeds the given size
+    private boolean inflate(CompressedOutput out, long maxSize) throws DataFormatException {
+        while (true) {
+            int bytesInflated = inflater.inflate(inflateBuffer);
+            if (bytesInflated > 0) {
+                if (out.size() + bytesInflated > maxSize) {
+                    return false;
+                }
+                out.write(inflateBuffer, 0, bytesInflated);
+            } else if (inflater.needsInput() || inflater.finished() || inflater.needsDictionary()) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The number of bytes of sent messages before compression.
+     */
+    public long sentBytes() {
+        return sentBytes.get();
+    }
+
+    /**
+     * The number of bytes of sent messages after compression.
+     */
+    public long sentCompressedBytes() {
+        return sentCompressedBytes.get();
+    }
+
+    /**
+     * The number of bytes of received messages after decompression.
+     */
+    public long receivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * The number of bytes of received messages before decompression.
+     */
+    public long receivedCompressedBytes() {
+        return receivedCompressedBytes.get();
+    }
+
+    /**
+     * The ratio of compressed size to original size of sent messages. It's
+     * {@code 1} if nothing has been compressed.
+     */
+    public double compressionRatio() {
+        long original = sentBytes.get();
+        return original == 0 ? 1 : (double) sentCompressedBytes.get() / original;
+    }
+
+    /**
+     * Releases the resources held by the underlying {@link Deflater} and
+     * {@link Inflater}.
+     */
+    public void close() {
+        deflater.end();
+        inflater.end();
+    }
+
+    private static class CompressedOutput extends ByteArrayOutputStream {
+        CompressedOutput(int size) {
+            super(size);
+        }
+
+        // Wraps the internal array to avoid copying it
+        ByteBuffer toByteBuffer(int trim) {
+            return ByteBuffer.wrap(buf, 0, Math.max(0, count - trim));
+        }
+    }
+
+}
@@ -47,10 +47,49 @@ public interface ServerWebSocket {
     ServerWebSocket send(String data);
 
     /**
-     * Sends a binary frame through the connection.
+     * Sends a binary frame through the connection. The buffer is handed over
+     * to the platform which may send it later, so it shouldn't be modified
+     * after this call.
      */
     ServerWebSocket send(ByteBuffer byteBuffer);
 
+    /**
+     * Sends a fragment of a binary message so that a large message can be
+     * streamed without holding it in memory. The message is completed by the
+     * fragment whose {@code last} is true, and no other message should be
+     * sent until then. If the platform can't write fragments, they are
+     * buffered and sent as a whole message with the last one. As with
+     * {@link ServerWebSocket#send(ByteBuffer)}, the buffer shouldn't be
+     * modified after this call.
+     */
+    ServerWebSocket send(ByteBuffer fragment, boolean last);
+
+    /**
+     * Sends a ping frame with the given application data of up to 125 bytes.
+     * The client is supposed to answer with a pong frame which is passed to
+     * {@link ServerWebSocket#onpong(Action)}. If the platform doesn't allow
+     * sending a ping, {@link UnsupportedOperationException} is thrown.
+     */
+    ServerWebSocket ping(ByteBuffer data);
+
+    /**
+     * Closes the connection if no frame has been received for the given
+     * milliseconds. When half of the timeout has passed, a ping is sent to
+     * provoke a pong from a live client if the platform allows it. Timeouts
+     * are managed by the shared timer wheel. The default value is 0, which
+     * means no timeout.
+     */
+    ServerWebSocket setIdleTimeout(long idleTimeout);
+
+    /**
+     * Closes the connection with status code 1009 if a message, assembled
+     * from its fragments, is larger than the given bytes. Where the platform
+     * supports it, the limit is also passed to the platform so that an
+     * oversize message is rejected before being buffered. The default value
+     * is 0, which means no limit.
+     */
+    ServerWebSocket setMaxMessageSize(long maxMessageSize);
+
     /**
      * Attaches an action for the text frame.
      */
@@ -61,6 +100,21 @@ public interface ServerWebSocket {
      */
     ServerWebSocket onbinary(Action<ByteBuffer> action);
 
+    /**
+     * Attaches an action for each fragment of a binary message as it's
+     * received. A message which is not fragmented is passed as a single
+     * fragment. Unless an action for the binary message is attached as well,
+     * fragmented messages are not buffered, so memory is bounded by the
+     * fragment size of the client.
+     */
+    ServerWebSocket onbinaryfragment(Action<Fragment> action);
+
+    /**
+     * Attaches an action for the pong frame. Its application data is passed.
+     * Not every platform delivers pong frames.
+     */
+    ServerWebSocket onpong(Action<ByteBuffer> action);
+
     /**
      * Attaches an action for the close event. After this event, the instance
      * shouldn't be used and all the other events will be disabled.